@@ -1,15 +1,50 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A simple command‑line based to‑do list manager.  The program allows
@@ -26,59 +61,5617 @@ public class ToDoListManager {
      * Inner class representing a single to‑do list task.  Each task
      * stores a short description, a due date, a priority level (1 =
      * highest priority) and a flag indicating whether it has been
-     * completed.  Providing getters and setters makes it easier to
-     * update these values later if needed.  The toString method is
-     * overridden to provide a human readable representation of a task
-     * when printing the list to the console.
+     * completed.  The toString method is overridden to provide a human
+     * readable representation of a task when printing the list to the
+     * console.
+     *
+     * The description is not kept as a string but as a handle into the
+     * DescriptionPool of the task table, and is only decoded when it is
+     * asked for or the task is printed.  A Task is therefore a view of
+     * a row that is valid until the table is next compacted.  The due
+     * date is kept as an epoch day, the way the table stores it, and is
+     * printed through the shared cache of {@link DateText}.
+     */
+    private static class Task {
+        private final DescriptionPool descriptions;
+        private final int description;
+        private final int dueDate;
+        private final int priority;
+        private boolean completed;
+
+        public Task(DescriptionPool descriptions, int description, int dueDate, int priority) {
+            this.descriptions = descriptions;
+            this.description = description;
+            this.dueDate = dueDate;
+            this.priority = priority;
+            this.completed = false;
+        }
+
+        public String getDescription() {
+            return descriptions.decode(description);
+        }
+
+        public void setCompleted(boolean completed) {
+            this.completed = completed;
+        }
+
+        @Override
+        public String toString() {
+            String status = completed ? "Completed" : "Pending";
+            return "Description: " + getDescription()
+                    + "\nDue Date: " + DateText.display(dueDate)
+                    + "\nPriority: " + priority
+                    + "\nStatus: " + status;
+        }
+    }
+
+    /**
+     * Renders epoch days as yyyy‑MM‑dd text without creating a LocalDate
+     * or going through a DateTimeFormatter.  Each rendered date is kept
+     * in a small direct‑mapped cache, together with its ASCII bytes for
+     * the tasks file and the form with non‑breaking hyphens shown to the
+     * user.  The due dates of a task list cluster around the present, so
+     * showing or saving a long list renders only a few hundred distinct
+     * days.  Years outside 1 to 9999 are left to DateTimeFormatter, which
+     * pads and signs them in its own way.
+     */
+    private static final class DateText {
+        // Number of cache slots; a power of two.
+        private static final int CACHE_SIZE = 4096;
+        private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+        private static final int MIN_DAY = TaskParser.epochDay(1, 1, 1);
+        private static final int MAX_DAY = TaskParser.epochDay(9999, 12, 31);
+
+        /**
+         * A rendered date.  The fields are final, so an entry written
+         * to the cache by one thread is seen complete by the others
+         * without locking; at worst two threads render the same day.
+         */
+        private static final class Entry {
+            final int epochDay;
+            final byte[] ascii;
+            final String text;
+            final String display;
+
+            Entry(int epochDay, byte[] ascii) {
+                this.epochDay = epochDay;
+                this.ascii = ascii;
+                this.text = new String(ascii, StandardCharsets.US_ASCII);
+                this.display = text.replace('-', '‑');
+            }
+        }
+
+        /**
+         * Returns the date in the yyyy‑MM‑dd format of the tasks file.
+         */
+        static String format(int epochDay) {
+            return entry(epochDay).text;
+        }
+
+        /**
+         * Returns the date as shown to the user, with non‑breaking
+         * hyphens.
+         */
+        static String display(int epochDay) {
+            return entry(epochDay).display;
+        }
+
+        /**
+         * Returns the ASCII bytes of the date in the format of the tasks
+         * file.  The array is shared and must not be modified.
+         */
+        static byte[] ascii(int epochDay) {
+            return entry(epochDay).ascii;
+        }
+
+        private static Entry entry(int epochDay) {
+            int slot = epochDay & (CACHE_SIZE - 1);
+            Entry entry = CACHE[slot];
+            if (entry == null || entry.epochDay != epochDay) {
+                entry = new Entry(epochDay, render(epochDay));
+                CACHE[slot] = entry;
+            }
+            return entry;
+        }
+
+        /**
+         * Converts the epoch day into a proleptic Gregorian date, the
+         * inverse of TaskParser.epochDay, and writes it out digit by
+         * digit.
+         */
+        private static byte[] render(int epochDay) {
+            if (epochDay < MIN_DAY || epochDay > MAX_DAY) {
+                return LocalDate.ofEpochDay(epochDay).format(DATE_FORMAT)
+                        .getBytes(StandardCharsets.US_ASCII);
+            }
+            int shifted = epochDay + 719468;
+            int era = shifted / 146097;
+            int dayOfEra = shifted - era * 146097;
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            return new byte[] {
+                    (byte) ('0' + year / 1000), (byte) ('0' + year / 100 % 10),
+                    (byte) ('0' + year / 10 % 10), (byte) ('0' + year % 10), '-',
+                    (byte) ('0' + month / 10), (byte) ('0' + month % 10), '-',
+                    (byte) ('0' + day / 10), (byte) ('0' + day % 10)
+            };
+        }
+    }
+
+    /**
+     * Hash map from long keys to int values held in two primitive
+     * arrays, so that neither keys nor values are boxed.  Collisions
+     * are resolved by linear probing, and removal shifts the following
+     * entries of a probe run back instead of leaving markers behind, so
+     * lookups stay fast however many keys come and go.  Key 0 marks an
+     * empty slot and cannot be stored.
+     *
+     * Keys are spread over the table by multiplying them with a large
+     * odd constant.  Task ids are handed out one after another, and
+     * with their low bits as slots they would form a single probe run
+     * over the whole table, which a removal has to walk to its end.
+     */
+    private static class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private int mask;
+        private int size;
+
+        public LongIntMap() {
+            this(16);
+        }
+
+        private LongIntMap(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * Returns the value stored for the key, or -1 if there is none.
+         */
+        public int get(long key) {
+            int slot = find(key);
+            return slot >= 0 ? values[slot] : -1;
+        }
+
+        public void put(long key, int value) {
+            putIfAbsent(key, value);
+            values[find(key)] = value;
+        }
+
+        /**
+         * Stores the value unless the key is already present.
+         *
+         * @return whether the value was stored
+         */
+        public boolean putIfAbsent(long key, int value) {
+            int slot = slot(key);
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            // Keep the table at most half full.
+            if (++size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            return true;
+        }
+
+        public void remove(long key) {
+            int slot = slot(key);
+            while (keys[slot] != key) {
+                if (keys[slot] == 0) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // Move later entries of the run into the gap whenever their
+            // home slot does not lie between the gap and themselves.
+            int gap = slot;
+            for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = slot(keys[next]);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = 0;
+            size--;
+        }
+
+        public void clear() {
+            Arrays.fill(keys, 0L);
+            size = 0;
+        }
+
+        public LongIntMap copy() {
+            LongIntMap copy = new LongIntMap(keys.length);
+            System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+            copy.size = size;
+            return copy;
+        }
+
+        private int find(long key) {
+            for (int slot = slot(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slot(oldKeys[i]);
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows of a TaskTable kept sorted by some comparison, as an array of
+     * row numbers.  The order is built with one merge sort the first
+     * time it is needed and from then on kept up to date as rows are
+     * added: a binary search finds the place of the row and a single
+     * array move opens the gap.  Removed rows stay in place until the
+     * table is compacted, when all of them are dropped in one pass.  Bulk loads leave it
+     * unbuilt so that they do not pay for one insertion per row.  No two
+     * rows may compare equal, so the comparison must fall back to
+     * something unique such as the row itself.
+     */
+    private static class RowOrder {
+        /**
+         * Compares two rows of the table the order belongs to.
+         */
+        interface RowComparator {
+            int compare(int a, int b);
+        }
+
+        private final RowComparator comparator;
+        private int[] rows = new int[0];
+        private boolean built;
+
+        RowOrder(RowComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            built = false;
+        }
+
+        /**
+         * Returns the row at the given position.  The order must have
+         * been built.
+         */
+        public int row(int position) {
+            return rows[position];
+        }
+
+        /**
+         * Returns the first of the first count positions whose row is
+         * not before the point searched for.  The predicate must hold
+         * for a prefix of the order and fail for the rest.
+         */
+        public int search(IntPredicate before, int count) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (before.test(rows[middle])) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Called after a row has been appended to the table, which now
+         * holds size rows.
+         */
+        public void added(int row, int size) {
+            if (!built) {
+                return;
+            }
+            int count = size - 1;
+            if (rows.length < size) {
+                rows = Arrays.copyOf(rows, Math.max(size, rows.length * 2));
+            }
+            int position = position(row, count);
+            System.arraycopy(rows, position, rows, position + 1, count - position);
+            rows[position] = row;
+        }
+
+        /**
+         * Called when the table drops its removed rows.  The array maps
+         * every old row of the table, size of them, to its new number,
+         * or to -1 if it was dropped.  The remaining rows keep their
+         * relative order, so renumbering them keeps the order sorted.
+         */
+        public void compact(int[] newRows, int size) {
+            if (!built) {
+                return;
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int row = newRows[rows[i]];
+                if (row >= 0) {
+                    rows[kept++] = row;
+                }
+            }
+        }
+
+        /**
+         * Sorts all rows of the table, which holds size rows.
+         */
+        public void build(int size) {
+            int[] sorted = new int[Math.max(size, rows.length)];
+            for (int row = 0; row < size; row++) {
+                sorted[row] = row;
+            }
+            sort(sorted, size, comparator);
+            rows = sorted;
+            built = true;
+        }
+
+        /**
+         * Sorts the first count entries of an array of rows with a
+         * bottom‑up merge sort over the int array, which avoids boxing
+         * every row number.
+         */
+        static void sort(int[] rows, int count, RowComparator comparator) {
+            int[] buffer = new int[count];
+            for (int width = 1; width < count; width *= 2) {
+                for (int low = 0; low < count - width; low += 2 * width) {
+                    int middle = low + width;
+                    int high = Math.min(low + 2 * width, count);
+                    if (comparator.compare(rows[middle - 1], rows[middle]) <= 0) {
+                        continue;
+                    }
+                    System.arraycopy(rows, low, buffer, low, high - low);
+                    int left = low;
+                    int right = middle;
+                    for (int i = low; i < high; i++) {
+                        if (right >= high
+                                || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+                            rows[i] = buffer[left++];
+                        } else {
+                            rows[i] = buffer[right++];
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the position among the first count entries at which
+         * the given row is, or would be inserted.
+         */
+        private int position(int row, int count) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(rows[middle], row) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Rows of a TaskTable grouped by priority, which is the order the
+     * task view lists them in.  Every distinct priority has a bucket
+     * holding its rows sorted by due date, and the buckets themselves
+     * are kept in priority order.  Lists use only a handful of
+     * priorities, so the bucket of a priority is found by a binary
+     * search over a very short array.
+     *
+     * The buckets are filled in a single pass over the table's due date
+     * order: appending every row to the bucket of its priority leaves
+     * each bucket sorted, so the view order comes out of this bucket
+     * sort in linear time without comparing any rows.  Afterwards a new
+     * row is inserted into its own bucket only, and removed rows stay
+     * where they are until the table is compacted.  The number of
+     * pending tasks in each bucket is kept up to date as well, so
+     * counting them by priority does not look at the rows at all.
+     */
+    private static class PriorityBuckets {
+        private final RowOrder.RowComparator byDueDate;
+        // Distinct priorities in ascending order and, for each, its rows,
+        // their number and how many of them are pending.
+        private int[] priorities = new int[0];
+        private int[][] rows = new int[0][];
+        private int[] sizes = new int[0];
+        private int[] pending = new int[0];
+        private int count;
+        private boolean built;
+
+        PriorityBuckets(RowOrder.RowComparator byDueDate) {
+            this.byDueDate = byDueDate;
+        }
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            built = false;
+        }
+
+        /**
+         * Distributes all rows that have not been removed into buckets,
+         * visiting them in due date order.
+         */
+        public void build(RowOrder dueDateOrder, int size, int[] rowPriorities, BitSet completed,
+                BitSet removed) {
+            count = 0;
+            for (int i = 0; i < size; i++) {
+                int row = dueDateOrder.row(i);
+                if (removed.get(row)) {
+                    continue;
+                }
+                int bucket = bucket(rowPriorities[row]);
+                ensureRoom(bucket);
+                rows[bucket][sizes[bucket]++] = row;
+                if (!completed.get(row)) {
+                    pending[bucket]++;
+                }
+            }
+            built = true;
+        }
+
+        /**
+         * Called after a row has been appended to the table.
+         */
+        public void added(int row, int priority, boolean done) {
+            if (!built) {
+                return;
+            }
+            int bucket = bucket(priority);
+            ensureRoom(bucket);
+            int position = position(bucket, row);
+            int[] bucketRows = rows[bucket];
+            System.arraycopy(bucketRows, position, bucketRows, position + 1, sizes[bucket] - position);
+            bucketRows[position] = row;
+            sizes[bucket]++;
+            if (!done) {
+                pending[bucket]++;
+            }
+        }
+
+        /**
+         * Called after a row with the given priority was removed.  The
+         * row stays in its bucket until the table is compacted; only the
+         * pending count changes.
+         */
+        public void removed(int priority, boolean done) {
+            if (built && !done) {
+                pending[find(priority)]--;
+            }
+        }
+
+        /**
+         * Called when the table drops its removed rows, with the same
+         * mapping from old to new rows as {@link RowOrder#compact}.
+         */
+        public void compact(int[] newRows) {
+            if (!built) {
+                return;
+            }
+            for (int bucket = 0; bucket < count; bucket++) {
+                int[] bucketRows = rows[bucket];
+                int kept = 0;
+                for (int i = 0; i < sizes[bucket]; i++) {
+                    int row = newRows[bucketRows[i]];
+                    if (row >= 0) {
+                        bucketRows[kept++] = row;
+                    }
+                }
+                sizes[bucket] = kept;
+            }
+        }
+
+        /**
+         * Called after a row with the given priority was marked
+         * completed or pending.
+         */
+        public void completionChanged(int priority, boolean done) {
+            if (built) {
+                pending[find(priority)] += done ? -1 : 1;
+            }
+        }
+
+        public int countPending(int priority) {
+            int bucket = find(priority);
+            return bucket < 0 ? 0 : pending[bucket];
+        }
+
+        /**
+         * Returns the first limit pending rows in view order, or all of
+         * them if there are fewer.  Buckets whose tasks are all done are
+         * passed over by their pending count, and the walk stops as soon
+         * as enough rows are found, so the cost depends on the rows
+         * returned rather than on the size of the table.
+         */
+        public int[] firstPending(int limit, BitSet completed, BitSet removed) {
+            long total = 0;
+            for (int bucket = 0; bucket < count; bucket++) {
+                total += pending[bucket];
+            }
+            int[] found = new int[(int) Math.min(limit, total)];
+            int filled = 0;
+            for (int bucket = 0; bucket < count && filled < found.length; bucket++) {
+                int[] bucketRows = rows[bucket];
+                int wanted = Math.min(pending[bucket], found.length - filled);
+                for (int i = 0; i < sizes[bucket] && wanted > 0; i++) {
+                    int row = bucketRows[i];
+                    if (!completed.get(row) && !removed.get(row)) {
+                        found[filled++] = row;
+                        wanted--;
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Passes every row to the action, bucket by bucket.
+         */
+        public void forEach(IntConsumer action) {
+            for (int bucket = 0; bucket < count; bucket++) {
+                int[] bucketRows = rows[bucket];
+                for (int i = 0; i < sizes[bucket]; i++) {
+                    action.accept(bucketRows[i]);
+                }
+            }
+        }
+
+        private int find(int priority) {
+            int bucket = Arrays.binarySearch(priorities, 0, count, priority);
+            return bucket < 0 ? -1 : bucket;
+        }
+
+        /**
+         * Returns the bucket of the given priority, creating an empty
+         * one in its place if there is none yet.
+         */
+        private int bucket(int priority) {
+            int bucket = Arrays.binarySearch(priorities, 0, count, priority);
+            if (bucket >= 0) {
+                return bucket;
+            }
+            bucket = -bucket - 1;
+            if (count == priorities.length) {
+                int capacity = Math.max(8, count * 2);
+                priorities = Arrays.copyOf(priorities, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                pending = Arrays.copyOf(pending, capacity);
+            }
+            int moved = count - bucket;
+            System.arraycopy(priorities, bucket, priorities, bucket + 1, moved);
+            System.arraycopy(rows, bucket, rows, bucket + 1, moved);
+            System.arraycopy(sizes, bucket, sizes, bucket + 1, moved);
+            System.arraycopy(pending, bucket, pending, bucket + 1, moved);
+            priorities[bucket] = priority;
+            rows[bucket] = new int[16];
+            sizes[bucket] = 0;
+            pending[bucket] = 0;
+            count++;
+            return bucket;
+        }
+
+        private void ensureRoom(int bucket) {
+            if (sizes[bucket] == rows[bucket].length) {
+                rows[bucket] = Arrays.copyOf(rows[bucket], sizes[bucket] * 2);
+            }
+        }
+
+        /**
+         * Returns the position in the bucket at which the given row is,
+         * or would be inserted.
+         */
+        private int position(int bucket, int row) {
+            int[] bucketRows = rows[bucket];
+            int low = 0;
+            int high = sizes[bucket];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (byDueDate.compare(bucketRows[middle], row) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Compressed set of rows in the style of a roaring bitmap.  Rows are
+     * split by their upper sixteen bits into chunks of 65536, and every
+     * chunk that has rows gets a container of its own.  A container with
+     * at most ARRAY_LIMIT rows keeps their lower sixteen bits in a sorted
+     * char array; a fuller one switches to a plain bitmap of 1024 longs.
+     * Either way a container never takes more than 8 KB, so a sparse set
+     * costs two bytes a row and a dense one an eighth of a byte.
+     *
+     * The sets are combined chunk by chunk: two arrays are merged, an
+     * array is intersected with a bitmap by probing the bitmap, and two
+     * bitmaps are combined a word at a time.  Every result is stored in
+     * whichever form is smaller.  Rows are added fastest in increasing
+     * order, as the table hands them out.
+     */
+    private static class RoaringBitmap {
+        // Containers with more rows than this are bitmaps; at 4096 rows
+        // an array takes as much room as a bitmap.
+        private static final int ARRAY_LIMIT = 4096;
+        private static final int BITMAP_WORDS = 1024;
+
+        // Upper sixteen bits of the rows of every container, ascending.
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int count;
+
+        /**
+         * Returns a bitmap holding the given rows, which may come in any
+         * order.  They are put in order by way of a plain BitSet, which
+         * takes linear time where sorting them would not.
+         */
+        public static RoaringBitmap of(int[] rows) {
+            BitSet sorted = new BitSet();
+            for (int row : rows) {
+                sorted.set(row);
+            }
+            RoaringBitmap bitmap = new RoaringBitmap();
+            for (int row = sorted.nextSetBit(0); row >= 0; row = sorted.nextSetBit(row + 1)) {
+                bitmap.add(row);
+            }
+            return bitmap;
+        }
+
+        public void add(int row) {
+            char key = (char) (row >>> 16);
+            int index = find(key);
+            if (index < 0) {
+                index = -index - 1;
+                insert(index, key, new Container());
+            }
+            containers[index].add((char) row);
+        }
+
+        public void remove(int row) {
+            int index = find((char) (row >>> 16));
+            if (index >= 0) {
+                Container container = containers[index];
+                container.remove((char) row);
+                if (container.cardinality == 0) {
+                    System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+                    System.arraycopy(containers, index + 1, containers, index, count - index - 1);
+                    containers[--count] = null;
+                }
+            }
+        }
+
+        public boolean contains(int row) {
+            int index = find((char) (row >>> 16));
+            return index >= 0 && containers[index].contains((char) row);
+        }
+
+        public int cardinality() {
+            int cardinality = 0;
+            for (int i = 0; i < count; i++) {
+                cardinality += containers[i].cardinality;
+            }
+            return cardinality;
+        }
+
+        /**
+         * Returns the rows in increasing order.
+         */
+        public int[] toArray() {
+            int[] rows = new int[cardinality()];
+            int[] filled = {0};
+            forEach(row -> rows[filled[0]++] = row);
+            return rows;
+        }
+
+        /**
+         * Passes every row to the action in increasing order.
+         */
+        public void forEach(IntConsumer action) {
+            for (int i = 0; i < count; i++) {
+                containers[i].forEach(keys[i] << 16, action);
+            }
+        }
+
+        /**
+         * Returns a new bitmap with the rows in both bitmaps.
+         */
+        public RoaringBitmap and(RoaringBitmap other) {
+            RoaringBitmap result = new RoaringBitmap();
+            int i = 0;
+            int j = 0;
+            while (i < count && j < other.count) {
+                if (keys[i] < other.keys[j]) {
+                    i++;
+                } else if (keys[i] > other.keys[j]) {
+                    j++;
+                } else {
+                    result.append(keys[i], containers[i++].and(other.containers[j++]));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns a new bitmap with the rows in either bitmap.
+         */
+        public RoaringBitmap or(RoaringBitmap other) {
+            RoaringBitmap result = new RoaringBitmap();
+            int i = 0;
+            int j = 0;
+            while (i < count || j < other.count) {
+                if (j == other.count || (i < count && keys[i] < other.keys[j])) {
+                    result.append(keys[i], containers[i++].copy());
+                } else if (i == count || keys[i] > other.keys[j]) {
+                    result.append(other.keys[j], other.containers[j++].copy());
+                } else {
+                    result.append(keys[i], containers[i++].or(other.containers[j++]));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns a new bitmap with the rows in this bitmap that are not
+         * in the other.
+         */
+        public RoaringBitmap andNot(RoaringBitmap other) {
+            RoaringBitmap result = new RoaringBitmap();
+            int j = 0;
+            for (int i = 0; i < count; i++) {
+                while (j < other.count && other.keys[j] < keys[i]) {
+                    j++;
+                }
+                if (j < other.count && other.keys[j] == keys[i]) {
+                    result.append(keys[i], containers[i].andNot(other.containers[j]));
+                } else {
+                    result.append(keys[i], containers[i].copy());
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns a new bitmap with every row moved to its place in
+         * newRows, dropping the rows mapped to -1, as when a table is
+         * compacted.  The mapping keeps the rows in order, so they are
+         * appended.
+         */
+        public RoaringBitmap remap(int[] newRows) {
+            RoaringBitmap result = new RoaringBitmap();
+            forEach(row -> {
+                if (newRows[row] >= 0) {
+                    result.add(newRows[row]);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Returns the index of the container with the given key, or
+         * -(insertion point) - 1 if there is none.  The last container
+         * is tried first, since rows mostly arrive in increasing order.
+         */
+        private int find(char key) {
+            if (count > 0 && keys[count - 1] == key) {
+                return count - 1;
+            }
+            if (count == 0 || keys[count - 1] < key) {
+                return -count - 1;
+            }
+            return Arrays.binarySearch(keys, 0, count, key);
+        }
+
+        private void append(char key, Container container) {
+            if (container.cardinality > 0) {
+                insert(count, key, container);
+            }
+        }
+
+        private void insert(int index, char key, Container container) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                containers = Arrays.copyOf(containers, count * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            System.arraycopy(containers, index, containers, index + 1, count - index);
+            keys[index] = key;
+            containers[index] = container;
+            count++;
+        }
+
+        /**
+         * The rows of one chunk: a sorted array of their lower sixteen
+         * bits while words is null, a bitmap in words otherwise.
+         */
+        private static final class Container {
+            private char[] values;
+            private long[] words;
+            private int cardinality;
+
+            Container() {
+                values = new char[4];
+            }
+
+            private Container(char[] values, long[] words, int cardinality) {
+                this.values = values;
+                this.words = words;
+                this.cardinality = cardinality;
+            }
+
+            boolean contains(char low) {
+                if (words != null) {
+                    return (words[low >>> 6] & 1L << low) != 0;
+                }
+                return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+            }
+
+            void add(char low) {
+                if (words != null) {
+                    if ((words[low >>> 6] & 1L << low) == 0) {
+                        words[low >>> 6] |= 1L << low;
+                        cardinality++;
+                    }
+                    return;
+                }
+                int position = cardinality == 0 || values[cardinality - 1] < low
+                        ? -cardinality - 1
+                        : Arrays.binarySearch(values, 0, cardinality, low);
+                if (position >= 0) {
+                    return;
+                }
+                if (cardinality == ARRAY_LIMIT) {
+                    words = toWords();
+                    values = null;
+                    add(low);
+                    return;
+                }
+                position = -position - 1;
+                if (cardinality == values.length) {
+                    values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_LIMIT));
+                }
+                System.arraycopy(values, position, values, position + 1, cardinality - position);
+                values[position] = low;
+                cardinality++;
+            }
+
+            void remove(char low) {
+                if (words != null) {
+                    if ((words[low >>> 6] & 1L << low) != 0) {
+                        words[low >>> 6] &= ~(1L << low);
+                        if (--cardinality <= ARRAY_LIMIT) {
+                            values = toValues(words, cardinality);
+                            words = null;
+                        }
+                    }
+                    return;
+                }
+                int position = Arrays.binarySearch(values, 0, cardinality, low);
+                if (position >= 0) {
+                    System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                    cardinality--;
+                }
+            }
+
+            void forEach(int base, IntConsumer action) {
+                if (words == null) {
+                    for (int i = 0; i < cardinality; i++) {
+                        action.accept(base | values[i]);
+                    }
+                    return;
+                }
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    for (long word = words[i]; word != 0; word &= word - 1) {
+                        action.accept(base | i << 6 | Long.numberOfTrailingZeros(word));
+                    }
+                }
+            }
+
+            Container copy() {
+                return new Container(values == null ? null : Arrays.copyOf(values, cardinality),
+                        words == null ? null : words.clone(), cardinality);
+            }
+
+            Container and(Container other) {
+                if (words != null && other.words != null) {
+                    long[] result = new long[BITMAP_WORDS];
+                    for (int i = 0; i < BITMAP_WORDS; i++) {
+                        result[i] = words[i] & other.words[i];
+                    }
+                    return fromWords(result);
+                }
+                if (words != null) {
+                    return other.and(this);
+                }
+                char[] result = new char[cardinality];
+                int kept = 0;
+                if (other.words != null) {
+                    for (int i = 0; i < cardinality; i++) {
+                        if (other.contains(values[i])) {
+                            result[kept++] = values[i];
+                        }
+                    }
+                } else {
+                    for (int i = 0, j = 0; i < cardinality && j < other.cardinality; ) {
+                        if (values[i] < other.values[j]) {
+                            i++;
+                        } else if (values[i] > other.values[j]) {
+                            j++;
+                        } else {
+                            result[kept++] = values[i];
+                            i++;
+                            j++;
+                        }
+                    }
+                }
+                return new Container(result, null, kept);
+            }
+
+            Container or(Container other) {
+                if (words == null && other.words == null
+                        && cardinality + other.cardinality <= ARRAY_LIMIT) {
+                    char[] result = new char[cardinality + other.cardinality];
+                    int merged = 0;
+                    int i = 0;
+                    int j = 0;
+                    while (i < cardinality || j < other.cardinality) {
+                        if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                            result[merged++] = values[i++];
+                        } else if (i == cardinality || values[i] > other.values[j]) {
+                            result[merged++] = other.values[j++];
+                        } else {
+                            result[merged++] = values[i++];
+                            j++;
+                        }
+                    }
+                    return new Container(result, null, merged);
+                }
+                long[] result = toWords();
+                if (other.words != null) {
+                    for (int i = 0; i < BITMAP_WORDS; i++) {
+                        result[i] |= other.words[i];
+                    }
+                } else {
+                    for (int i = 0; i < other.cardinality; i++) {
+                        result[other.values[i] >>> 6] |= 1L << other.values[i];
+                    }
+                }
+                return fromWords(result);
+            }
+
+            Container andNot(Container other) {
+                if (words == null) {
+                    char[] result = new char[cardinality];
+                    int kept = 0;
+                    for (int i = 0; i < cardinality; i++) {
+                        if (!other.contains(values[i])) {
+                            result[kept++] = values[i];
+                        }
+                    }
+                    return new Container(result, null, kept);
+                }
+                long[] result = words.clone();
+                if (other.words != null) {
+                    for (int i = 0; i < BITMAP_WORDS; i++) {
+                        result[i] &= ~other.words[i];
+                    }
+                } else {
+                    for (int i = 0; i < other.cardinality; i++) {
+                        result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+                    }
+                }
+                return fromWords(result);
+            }
+
+            /**
+             * Returns the rows as a new bitmap.
+             */
+            private long[] toWords() {
+                if (words != null) {
+                    return words.clone();
+                }
+                long[] result = new long[BITMAP_WORDS];
+                for (int i = 0; i < cardinality; i++) {
+                    result[values[i] >>> 6] |= 1L << values[i];
+                }
+                return result;
+            }
+
+            private static Container fromWords(long[] words) {
+                int cardinality = 0;
+                for (long word : words) {
+                    cardinality += Long.bitCount(word);
+                }
+                if (cardinality > ARRAY_LIMIT) {
+                    return new Container(null, words, cardinality);
+                }
+                return new Container(toValues(words, cardinality), null, cardinality);
+            }
+
+            private static char[] toValues(long[] words, int cardinality) {
+                char[] values = new char[Math.max(cardinality, 4)];
+                int filled = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    for (long word = words[i]; word != 0; word &= word - 1) {
+                        values[filled++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    }
+                }
+                return values;
+            }
+        }
+    }
+
+    /**
+     * Bitmaps of the rows of a TaskTable by priority and by completion,
+     * so that filters such as "pending, priority at most 2 and overdue"
+     * are answered by combining bitmaps rather than by looking at every
+     * row.  Every distinct priority has a RoaringBitmap of its rows, and
+     * one more holds the completed rows.  Removed rows are taken out of
+     * the bitmaps straight away, so the bitmaps only ever hold tasks.
+     *
+     * Like the other indexes, the bitmaps are only built the first time
+     * a filter needs them and are kept up to date from then on.  When
+     * the table is compacted they are rebuilt from their own rows under
+     * the new numbering, which touches the set rows only.
+     */
+    private static class FilterIndex {
+        // Distinct priorities in ascending order and the rows of each.
+        private int[] priorities = new int[0];
+        private RoaringBitmap[] rows = new RoaringBitmap[0];
+        private int count;
+        private RoaringBitmap completed = new RoaringBitmap();
+        private boolean built;
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            priorities = new int[0];
+            rows = new RoaringBitmap[0];
+            count = 0;
+            completed = new RoaringBitmap();
+            built = false;
+        }
+
+        /**
+         * Adds all rows that have not been removed, in row order.
+         */
+        public void build(int size, int[] rowPriorities, BitSet completedRows, BitSet removed) {
+            invalidate();
+            for (int row = 0; row < size; row++) {
+                if (!removed.get(row)) {
+                    bitmap(rowPriorities[row]).add(row);
+                    if (completedRows.get(row)) {
+                        completed.add(row);
+                    }
+                }
+            }
+            built = true;
+        }
+
+        /**
+         * Called after a row has been appended to the table.
+         */
+        public void added(int row, int priority, boolean done) {
+            if (built) {
+                bitmap(priority).add(row);
+                if (done) {
+                    completed.add(row);
+                }
+            }
+        }
+
+        /**
+         * Called after a row with the given priority was removed.
+         */
+        public void removed(int row, int priority) {
+            if (built) {
+                rows[find(priority)].remove(row);
+                completed.remove(row);
+            }
+        }
+
+        /**
+         * Called after a row was marked completed or pending.
+         */
+        public void completionChanged(int row, boolean done) {
+            if (!built) {
+                return;
+            }
+            if (done) {
+                completed.add(row);
+            } else {
+                completed.remove(row);
+            }
+        }
+
+        /**
+         * Called when the table drops its removed rows, with the same
+         * mapping from old to new rows as {@link RowOrder#compact}.
+         */
+        public void compact(int[] newRows) {
+            if (!built) {
+                return;
+            }
+            for (int bucket = 0; bucket < count; bucket++) {
+                rows[bucket] = rows[bucket].remap(newRows);
+            }
+            completed = completed.remap(newRows);
+        }
+
+        /**
+         * Returns the rows whose priority number is at most the given
+         * one, in a new bitmap.
+         */
+        public RoaringBitmap withPriorityAtMost(int priority) {
+            RoaringBitmap result = new RoaringBitmap();
+            for (int bucket = 0; bucket < count && priorities[bucket] <= priority; bucket++) {
+                result = result.or(rows[bucket]);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the completed rows.  The bitmap is the index's own and
+         * must not be changed by the caller.
+         */
+        public RoaringBitmap completed() {
+            return completed;
+        }
+
+        private int find(int priority) {
+            return Arrays.binarySearch(priorities, 0, count, priority);
+        }
+
+        /**
+         * Returns the bitmap of the given priority, adding an empty one
+         * in its place if there is none yet.
+         */
+        private RoaringBitmap bitmap(int priority) {
+            int bucket = find(priority);
+            if (bucket >= 0) {
+                return rows[bucket];
+            }
+            bucket = -bucket - 1;
+            if (count == priorities.length) {
+                int capacity = Math.max(8, count * 2);
+                priorities = Arrays.copyOf(priorities, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+            }
+            System.arraycopy(priorities, bucket, priorities, bucket + 1, count - bucket);
+            System.arraycopy(rows, bucket, rows, bucket + 1, count - bucket);
+            priorities[bucket] = priority;
+            rows[bucket] = new RoaringBitmap();
+            count++;
+            return rows[bucket];
+        }
+    }
+
+    /**
+     * Inverted index from the words of task descriptions to the rows of
+     * a TaskTable whose descriptions contain them, for full‑text search.
+     * A word is a run of letters and digits, compared without regard to
+     * case; every byte of a non‑ASCII character counts as a letter, so
+     * accented words stay whole.  Words are stored once each in a
+     * DescriptionPool of their own, whose handles number the words, and
+     * every word has a posting list of its rows in increasing order.
+     * A word that occurs in a single row, as ticket numbers and other
+     * one‑off words do, keeps that row without an array of its own.
+     *
+     * Like the due date order, the index is only built the first time a
+     * search needs it, so loading a long list costs nothing extra.  From
+     * then on every added row is appended to the lists of its words,
+     * which keeps them sorted because new rows have the highest numbers.
+     * Removed rows stay in the lists until the table is compacted and
+     * are skipped by the table while they do.
+     *
+     * A search is an OR of AND clauses.  Each clause intersects the
+     * lists of its words, starting from the shortest and looking every
+     * remaining row up in the longer lists with a binary search, so its
+     * cost depends on the number of rows with the rarest word rather
+     * than on the size of the list.
+     */
+    private static class SearchIndex {
+        /**
+         * Receives the words of a text one at a time.  The bytes are
+         * only valid during the call.
+         */
+        interface WordConsumer {
+            void accept(byte[] word, int length);
+        }
+
+        private final DescriptionPool words = new DescriptionPool(new HeapArena(256));
+        // Per word: its number of rows, the row of a word found in just
+        // one, and the rows of a word found in more.
+        private int[] counts = new int[16];
+        private int[] singleRows = new int[16];
+        private int[][] postings = new int[16][];
+        // One more than the highest word number handed out.
+        private int wordCount;
+        private byte[] scratch = new byte[64];
+        private boolean built;
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            built = false;
+        }
+
+        /**
+         * Indexes every row of a table with size rows, leaving out the
+         * removed ones.
+         */
+        public void build(TaskTable table, int size, BitSet removed) {
+            words.clear();
+            Arrays.fill(counts, 0);
+            Arrays.fill(postings, null);
+            wordCount = 0;
+            for (int row = 0; row < size; row++) {
+                if (!removed.get(row)) {
+                    index(row, table.descriptionBytes(row));
+                }
+            }
+            built = true;
+        }
+
+        /**
+         * Called after a row has been appended to the table.
+         */
+        public void added(TaskTable table, int row) {
+            if (built) {
+                index(row, table.descriptionBytes(row));
+            }
+        }
+
+        /**
+         * Called when the table drops its removed rows, with the array
+         * mapping every old row to its new number or to -1.  Words left
+         * without rows are dropped.
+         */
+        public void compact(int[] newRows) {
+            if (!built) {
+                return;
+            }
+            for (int word = 0; word < wordCount; word++) {
+                if (counts[word] == 0) {
+                    continue;
+                }
+                int kept = 0;
+                if (counts[word] == 1) {
+                    int row = newRows[singleRows[word]];
+                    if (row >= 0) {
+                        singleRows[word] = row;
+                        kept = 1;
+                    }
+                } else {
+                    int[] rows = postings[word];
+                    for (int i = 0; i < counts[word]; i++) {
+                        int row = newRows[rows[i]];
+                        if (row >= 0) {
+                            rows[kept++] = row;
+                        }
+                    }
+                    if (kept <= 1) {
+                        singleRows[word] = rows[0];
+                        postings[word] = null;
+                    }
+                }
+                counts[word] = kept;
+                if (kept == 0) {
+                    words.release(word);
+                }
+            }
+            words.compactIfWasteful();
+        }
+
+        /**
+         * Returns the rows, possibly including removed ones, whose
+         * descriptions contain all words of at least one clause.  Each
+         * clause is a text whose words must all be present.  The result
+         * is a bitset indexed by row.
+         */
+        public BitSet search(List<String> clauses) {
+            BitSet matches = new BitSet();
+            for (String clause : clauses) {
+                List<Integer> clauseWords = new ArrayList<>();
+                boolean[] unknown = new boolean[1];
+                byte[] text = clause.getBytes(StandardCharsets.UTF_8);
+                forEachWord(ByteBuffer.wrap(text), (word, length) -> {
+                    int number = words.find(word, 0, length);
+                    if (number < 0) {
+                        unknown[0] = true;
+                    } else {
+                        clauseWords.add(number);
+                    }
+                });
+                if (!unknown[0] && !clauseWords.isEmpty()) {
+                    intersect(clauseWords, matches);
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * Splits a UTF‑8 text into words, lower‑casing ASCII letters.
+         */
+        public void forEachWord(ByteBuffer text, WordConsumer action) {
+            int length = 0;
+            for (int i = text.position(); i < text.limit(); i++) {
+                byte b = text.get(i);
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                } else if (!(b < 0 || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9'))) {
+                    if (length > 0) {
+                        action.accept(scratch, length);
+                        length = 0;
+                    }
+                    continue;
+                }
+                if (length == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, length * 2);
+                }
+                scratch[length++] = b;
+            }
+            if (length > 0) {
+                action.accept(scratch, length);
+            }
+        }
+
+        private void index(int row, ByteBuffer description) {
+            forEachWord(description, (word, length) -> {
+                int number = words.find(word, 0, length);
+                if (number < 0) {
+                    number = words.intern(word, 0, length);
+                    if (number >= counts.length) {
+                        int capacity = Math.max(counts.length * 2, number + 1);
+                        counts = Arrays.copyOf(counts, capacity);
+                        singleRows = Arrays.copyOf(singleRows, capacity);
+                        postings = Arrays.copyOf(postings, capacity);
+                    }
+                    wordCount = Math.max(wordCount, number + 1);
+                }
+                add(number, row);
+            });
+        }
+
+        private void add(int word, int row) {
+            int count = counts[word];
+            if (count == 0) {
+                singleRows[word] = row;
+            } else if (count == 1) {
+                if (singleRows[word] == row) {
+                    return;
+                }
+                postings[word] = new int[] {singleRows[word], row, 0, 0};
+            } else {
+                int[] rows = postings[word];
+                if (rows[count - 1] == row) {
+                    return;
+                }
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                    postings[word] = rows;
+                }
+                rows[count] = row;
+            }
+            counts[word] = count + 1;
+        }
+
+        /**
+         * Marks the rows holding every one of the given words.
+         */
+        private void intersect(List<Integer> clauseWords, BitSet matches) {
+            clauseWords.sort((a, b) -> Integer.compare(counts[a], counts[b]));
+            int rarest = clauseWords.get(0);
+            int[] candidates = counts[rarest] == 1
+                    ? new int[] {singleRows[rarest]}
+                    : Arrays.copyOf(postings[rarest], counts[rarest]);
+            int count = candidates.length;
+            for (int i = 1; i < clauseWords.size() && count > 0; i++) {
+                int word = clauseWords.get(i);
+                int kept = 0;
+                for (int j = 0; j < count; j++) {
+                    if (contains(word, candidates[j])) {
+                        candidates[kept++] = candidates[j];
+                    }
+                }
+                count = kept;
+            }
+            for (int i = 0; i < count; i++) {
+                matches.set(candidates[i]);
+            }
+        }
+
+        private boolean contains(int word, int row) {
+            if (counts[word] == 1) {
+                return singleRows[word] == row;
+            }
+            return Arrays.binarySearch(postings[word], 0, counts[word], row) >= 0;
+        }
+    }
+
+    /**
+     * Trigram index over the distinct descriptions in the
+     * DescriptionPool of a TaskTable, for finding tasks by a description
+     * that is only roughly remembered or mistyped.  Every word of a
+     * description, lower‑cased and padded with two spaces in front and
+     * one behind, is cut into overlapping three‑byte trigrams, so that
+     * "milk" gives "  m", " mi", "mil", "ilk" and "lk ".  Words are
+     * split as by the SearchIndex.  Every trigram has a posting list of
+     * the description handles it occurs in, kept in a LongIntMap from
+     * the trigram to its list.
+     *
+     * A query is cut into trigrams the same way, and the descriptions
+     * on their lists are the candidates.  The similarity of a
+     * description is the number of trigrams it shares with the query
+     * divided by the number of distinct trigrams in either of the two,
+     * and those at least MIN_SIMILARITY similar are ranked by it.  A typo changes at
+     * most three trigrams of a word, so the right description still
+     * shares most of its trigrams with the query.  Indexing descriptions
+     * rather than rows means a description used by many tasks is
+     * indexed and scored only once.
+     *
+     * Like the other indexes, it is only built the first time a fuzzy
+     * search needs it, and from then on kept up to date: a description
+     * is indexed when its first task is added, and the lists are purged
+     * of descriptions without tasks when the table is compacted, before
+     * the pool hands out their handles again.
+     */
+    private static class TrigramIndex {
+        // Least similarity, between 0 and 1, for a description to be
+        // found; the same default as the PostgreSQL pg_trgm module.
+        private static final double MIN_SIMILARITY = 0.3;
+
+        // Number of the posting list of every trigram, keyed by the
+        // trigram plus one, since the map cannot hold key 0.
+        private final LongIntMap listNumbers = new LongIntMap();
+        private int[][] postings = new int[16][];
+        private int[] postingCounts = new int[16];
+        private int listCount;
+        // Number of tasks using each description, by handle, its number
+        // of distinct trigrams, and the handles whose trigrams are in the
+        // lists.
+        private int[] tasks = new int[16];
+        private int[] trigramCounts = new int[16];
+        private final BitSet indexed = new BitSet();
+        private int[] trigrams = new int[64];
+        private boolean built;
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            built = false;
+        }
+
+        /**
+         * Indexes the descriptions of every row of a table with size
+         * rows, leaving out the removed ones.
+         */
+        public void build(DescriptionPool pool, int[] descriptions, int size, BitSet removed) {
+            listNumbers.clear();
+            postings = new int[16][];
+            postingCounts = new int[16];
+            listCount = 0;
+            tasks = new int[Math.max(pool.entryCount, 16)];
+            trigramCounts = new int[tasks.length];
+            indexed.clear();
+            for (int row = 0; row < size; row++) {
+                if (!removed.get(row)) {
+                    tasks[descriptions[row]]++;
+                }
+            }
+            for (int handle = 0; handle < pool.entryCount; handle++) {
+                if (tasks[handle] > 0) {
+                    index(pool, handle);
+                }
+            }
+            built = true;
+        }
+
+        /**
+         * Called after a task with the description of the given handle
+         * has been added to the table.
+         */
+        public void added(DescriptionPool pool, int handle) {
+            if (!built) {
+                return;
+            }
+            if (handle >= tasks.length) {
+                int capacity = Math.max(tasks.length * 2, handle + 1);
+                tasks = Arrays.copyOf(tasks, capacity);
+                trigramCounts = Arrays.copyOf(trigramCounts, capacity);
+            }
+            if (tasks[handle]++ == 0 && !indexed.get(handle)) {
+                index(pool, handle);
+            }
+        }
+
+        /**
+         * Called when a task with the description of the given handle
+         * has been removed from the table.
+         */
+        public void removed(int handle) {
+            if (built) {
+                tasks[handle]--;
+            }
+        }
+
+        /**
+         * Called when the table has been compacted, which releases the
+         * descriptions no task uses any more.  They are taken out of
+         * the posting lists before their handles can be given to other
+         * descriptions.
+         */
+        public void compact() {
+            if (!built) {
+                return;
+            }
+            boolean stale = false;
+            for (int handle = 0; handle < tasks.length && !stale; handle++) {
+                stale = tasks[handle] == 0 && indexed.get(handle);
+            }
+            if (!stale) {
+                return;
+            }
+            for (int list = 0; list < listCount; list++) {
+                int[] handles = postings[list];
+                int kept = 0;
+                for (int i = 0; i < postingCounts[list]; i++) {
+                    if (tasks[handles[i]] > 0) {
+                        handles[kept++] = handles[i];
+                    }
+                }
+                postingCounts[list] = kept;
+            }
+            for (int handle = indexed.nextSetBit(0); handle >= 0; handle = indexed.nextSetBit(handle + 1)) {
+                if (tasks[handle] == 0) {
+                    indexed.clear(handle);
+                }
+            }
+        }
+
+        /**
+         * Returns the handles of at most limit descriptions similar to
+         * the query, the most similar first and, among equally similar
+         * ones, those closest to it in length.  Only descriptions used
+         * by at least one task are returned.
+         *
+         * The trigrams every description shares with the query are
+         * counted by walking the posting lists of the query's trigrams
+         * once, and the counts are then read in handle order.  Counting
+         * is a sequential pass over each list, which is cheaper than
+         * scoring the descriptions one by one even for queries made of
+         * common trigrams.
+         */
+        public int[] search(DescriptionPool pool, String query, int limit) {
+            byte[] text = query.getBytes(StandardCharsets.UTF_8);
+            int queryCount = extract(ByteBuffer.wrap(text));
+            int[] shared = new int[tasks.length];
+            for (int i = 0; i < queryCount; i++) {
+                // Trigrams that no description has are passed over.
+                int list = listNumbers.get(trigrams[i] + 1L);
+                if (list >= 0) {
+                    int[] handles = postings[list];
+                    for (int j = 0, n = postingCounts[list]; j < n; j++) {
+                        shared[handles[j]]++;
+                    }
+                }
+            }
+            Ranking ranking = new Ranking(limit);
+            for (int handle = 0; handle < shared.length; handle++) {
+                int common = shared[handle];
+                if (common > 0 && tasks[handle] > 0) {
+                    ranking.offer(handle, (double) common / (queryCount + trigramCounts[handle] - common),
+                            Math.abs(pool.length(handle) - text.length));
+                }
+            }
+            return ranking.handles();
+        }
+
+        /**
+         * The best descriptions found so far, at most a fixed number,
+         * kept in order by insertion.
+         */
+        private static final class Ranking {
+            private final int[] handles;
+            private final double[] scores;
+            private final int[] distances;
+            private int size;
+
+            Ranking(int limit) {
+                handles = new int[limit];
+                scores = new double[limit];
+                distances = new int[limit];
+            }
+
+            private boolean isFull() {
+                return size == handles.length;
+            }
+
+            /**
+             * Keeps the description if it is similar enough and better
+             * than the last one kept: more similar, or as similar and
+             * closer to the query in length.
+             */
+            void offer(int handle, double score, int distance) {
+                if (score < MIN_SIMILARITY || handles.length == 0
+                        || (isFull() && !better(score, distance, size - 1))) {
+                    return;
+                }
+                int position = isFull() ? size - 1 : size++;
+                while (position > 0 && better(score, distance, position - 1)) {
+                    handles[position] = handles[position - 1];
+                    scores[position] = scores[position - 1];
+                    distances[position] = distances[position - 1];
+                    position--;
+                }
+                handles[position] = handle;
+                scores[position] = score;
+                distances[position] = distance;
+            }
+
+            int[] handles() {
+                return Arrays.copyOf(handles, size);
+            }
+
+            private boolean better(double score, int distance, int position) {
+                return score > scores[position]
+                        || (score == scores[position] && distance < distances[position]);
+            }
+        }
+
+        private void index(DescriptionPool pool, int handle) {
+            int count = extract(pool.bytes(handle));
+            trigramCounts[handle] = count;
+            indexed.set(handle);
+            for (int i = 0; i < count; i++) {
+                long key = trigrams[i] + 1L;
+                int list = listNumbers.get(key);
+                if (list < 0) {
+                    list = listCount++;
+                    listNumbers.put(key, list);
+                    if (list == postings.length) {
+                        postings = Arrays.copyOf(postings, list * 2);
+                        postingCounts = Arrays.copyOf(postingCounts, list * 2);
+                    }
+                    postings[list] = new int[2];
+                }
+                int[] handles = postings[list];
+                int size = postingCounts[list];
+                if (size == handles.length) {
+                    handles = Arrays.copyOf(handles, size * 2);
+                    postings[list] = handles;
+                }
+                handles[size] = handle;
+                postingCounts[list] = size + 1;
+            }
+        }
+
+        /**
+         * Cuts a UTF‑8 text into its distinct trigrams, each packed into
+         * the low three bytes of an int, and leaves them sorted at the
+         * start of the trigrams array.  Returns their number.
+         */
+        private int extract(ByteBuffer text) {
+            int count = 0;
+            int previous = ' ';
+            int beforePrevious = ' ';
+            boolean inWord = false;
+            for (int i = text.position(); i <= text.limit(); i++) {
+                int b = i < text.limit() ? text.get(i) & 0xFF : ' ';
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                } else if (!(b >= 0x80 || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9'))) {
+                    if (!inWord) {
+                        continue;
+                    }
+                    // The end of a word gives one more trigram with a
+                    // trailing space.
+                    b = ' ';
+                    inWord = false;
+                } else {
+                    inWord = true;
+                }
+                if (count + 1 >= trigrams.length) {
+                    trigrams = Arrays.copyOf(trigrams, trigrams.length * 2);
+                }
+                trigrams[count++] = beforePrevious << 16 | previous << 8 | b;
+                if (b == ' ') {
+                    previous = ' ';
+                    beforePrevious = ' ';
+                } else {
+                    beforePrevious = previous;
+                    previous = b;
+                }
+            }
+            Arrays.sort(trigrams, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || trigrams[i] != trigrams[distinct - 1]) {
+                    trigrams[distinct++] = trigrams[i];
+                }
+            }
+            return distinct;
+        }
+    }
+
+    /**
+     * Index of the distinct descriptions in the DescriptionPool of a
+     * TaskTable, suggesting the descriptions most often used for tasks
+     * that start with a given prefix.  The pool handles of the
+     * descriptions are kept in an array sorted by their bytes, with
+     * ASCII letters compared without regard to case, so the
+     * descriptions starting with a prefix form one range of the array,
+     * found with two binary searches.  Over the array lies a segment
+     * tree whose every node holds the position of the description with
+     * the most tasks in its range, and the k most frequent descriptions
+     * of a range are found by repeatedly taking the best position of a
+     * range and splitting the range around it, which asks the tree for
+     * 2k - 1 ranges at O(log n) each.  A suggestion therefore takes
+     * microseconds however many tasks the list holds.
+     *
+     * The index is built the first time a suggestion is asked for.  A
+     * new description is then inserted into the sorted array and
+     * invalidates the tree, which is rebuilt in one linear pass before
+     * the next suggestion; one task more or less for a known
+     * description only updates the path from its leaf to the root.  A
+     * description whose tasks have all been removed is no longer
+     * suggested, and leaves the array when the table is compacted.
+     */
+    private static class SuggestionIndex {
+        private int[] handles = new int[0];
+        private int count;
+        // Number of tasks with each description, by handle.
+        private int[] frequencies = new int[0];
+        // Segment tree over the positions of the sorted array, with the
+        // leaves from index leaves on.  Empty nodes hold -1.
+        private int[] best = new int[0];
+        private int leaves;
+        private boolean treeBuilt;
+        private boolean built;
+
+        public boolean isBuilt() {
+            return built;
+        }
+
+        public void invalidate() {
+            built = false;
+        }
+
+        /**
+         * Indexes the descriptions of the rows of a table with size
+         * rows, given the handles of their descriptions, leaving out the
+         * removed rows.
+         */
+        public void build(DescriptionPool pool, int[] descriptions, int size, BitSet removed) {
+            frequencies = new int[Math.max(pool.entryCount, 16)];
+            for (int row = 0; row < size; row++) {
+                if (!removed.get(row)) {
+                    frequencies[descriptions[row]]++;
+                }
+            }
+            handles = new int[Math.max(pool.entryCount, 16)];
+            count = 0;
+            for (int handle = 0; handle < pool.entryCount; handle++) {
+                if (frequencies[handle] > 0) {
+                    handles[count++] = handle;
+                }
+            }
+            RowOrder.sort(handles, count, pool::compareIgnoringCase);
+            treeBuilt = false;
+            built = true;
+        }
+
+        /**
+         * Called after a task with the description of the given handle
+         * has been added to the table.
+         */
+        public void added(DescriptionPool pool, int handle) {
+            if (!built) {
+                return;
+            }
+            if (handle >= frequencies.length) {
+                frequencies = Arrays.copyOf(frequencies, Math.max(frequencies.length * 2, handle + 1));
+            }
+            frequencies[handle]++;
+            int position = position(pool, handle);
+            if (position < count && handles[position] == handle) {
+                if (treeBuilt) {
+                    update(position);
+                }
+                return;
+            }
+            if (count == handles.length) {
+                handles = Arrays.copyOf(handles, count * 2);
+            }
+            System.arraycopy(handles, position, handles, position + 1, count - position);
+            handles[position] = handle;
+            count++;
+            treeBuilt = false;
+        }
+
+        /**
+         * Called when a task with the description of the given handle
+         * has been removed from the table.
+         */
+        public void removed(DescriptionPool pool, int handle) {
+            if (!built) {
+                return;
+            }
+            frequencies[handle]--;
+            if (treeBuilt) {
+                update(position(pool, handle));
+            }
+        }
+
+        /**
+         * Called when the table has been compacted, which releases the
+         * descriptions no task uses any more.  They are dropped before
+         * their handles can be given to other descriptions.
+         */
+        public void compact() {
+            if (!built) {
+                return;
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (frequencies[handles[i]] > 0) {
+                    handles[kept++] = handles[i];
+                }
+            }
+            count = kept;
+            treeBuilt = false;
+        }
+
+        /**
+         * Returns the handles of at most limit descriptions starting
+         * with the given prefix, whose ASCII letters must be in lower
+         * case, the most frequently used first.
+         */
+        public int[] suggest(DescriptionPool pool, byte[] prefix, int limit) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (pool.compareToPrefix(handles[middle], prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int from = low;
+            high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (pool.compareToPrefix(handles[middle], prefix) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (!treeBuilt) {
+                buildTree();
+            }
+            // Candidate ranges and the best position of each.
+            int[] starts = new int[2 * limit + 1];
+            int[] ends = new int[2 * limit + 1];
+            int[] bests = new int[2 * limit + 1];
+            int candidates = 0;
+            if (from < low) {
+                starts[0] = from;
+                ends[0] = low;
+                bests[0] = best(from, low);
+                candidates = 1;
+            }
+            int[] result = new int[limit];
+            int found = 0;
+            while (found < limit && candidates > 0) {
+                int pick = 0;
+                for (int i = 1; i < candidates; i++) {
+                    if (better(bests[i], bests[pick])) {
+                        pick = i;
+                    }
+                }
+                if (frequencies[handles[bests[pick]]] == 0) {
+                    // Only descriptions of removed tasks are left.
+                    break;
+                }
+                int start = starts[pick];
+                int end = ends[pick];
+                int position = bests[pick];
+                result[found++] = handles[position];
+                candidates--;
+                starts[pick] = starts[candidates];
+                ends[pick] = ends[candidates];
+                bests[pick] = bests[candidates];
+                if (start < position) {
+                    starts[candidates] = start;
+                    ends[candidates] = position;
+                    bests[candidates++] = best(start, position);
+                }
+                if (position + 1 < end) {
+                    starts[candidates] = position + 1;
+                    ends[candidates] = end;
+                    bests[candidates++] = best(position + 1, end);
+                }
+            }
+            return Arrays.copyOf(result, found);
+        }
+
+        /**
+         * Returns the position of the handle in the sorted array, or
+         * where it would be inserted.
+         */
+        private int position(DescriptionPool pool, int handle) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (pool.compareIgnoringCase(handles[middle], handle) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void buildTree() {
+            leaves = Integer.highestOneBit(Math.max(count, 1) * 2 - 1);
+            if (best.length < 2 * leaves) {
+                best = new int[2 * leaves];
+            }
+            for (int i = 0; i < leaves; i++) {
+                best[leaves + i] = i < count ? i : -1;
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                best[node] = pick(best[2 * node], best[2 * node + 1]);
+            }
+            treeBuilt = true;
+        }
+
+        private void update(int position) {
+            for (int node = (leaves + position) / 2; node > 0; node /= 2) {
+                best[node] = pick(best[2 * node], best[2 * node + 1]);
+            }
+        }
+
+        /**
+         * Returns the position with the most tasks among the positions
+         * from start up to end.
+         */
+        private int best(int start, int end) {
+            int result = -1;
+            for (int low = start + leaves, high = end + leaves; low < high; low /= 2, high /= 2) {
+                if ((low & 1) == 1) {
+                    result = pick(result, best[low++]);
+                }
+                if ((high & 1) == 1) {
+                    result = pick(result, best[--high]);
+                }
+            }
+            return result;
+        }
+
+        private int pick(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return better(b, a) ? b : a;
+        }
+
+        /**
+         * Returns whether position a has more tasks than b, or as many
+         * and comes first.
+         */
+        private boolean better(int a, int b) {
+            int difference = frequencies[handles[a]] - frequencies[handles[b]];
+            return difference > 0 || (difference == 0 && a < b);
+        }
+    }
+
+    /**
+     * Bloom filter over long keys: a bit array in which every key sets a
+     * few bits chosen by hashing it.  A key whose bits are not all set
+     * was certainly never added, so most lookups of new keys are
+     * answered by a handful of memory reads without holding the keys
+     * themselves; a key whose bits are all set may have been added and
+     * has to be checked exactly.  Keys cannot be taken out again, so a
+     * filter only ever grows more likely to answer maybe, and is built
+     * afresh once it holds more keys than it was sized for.
+     */
+    private static class BloomFilter {
+        // Ten bits per expected key with seven bits set per key give
+        // about one false positive in a hundred lookups.
+        private static final int BITS_PER_KEY = 10;
+        private static final int HASHES = 7;
+        private final long[] words;
+        private final int mask;
+        private final int capacity;
+        private int added;
+
+        /**
+         * Creates a filter sized for the given number of keys.
+         */
+        public BloomFilter(int expectedKeys) {
+            capacity = Math.max(expectedKeys, 1024);
+            long bits = Math.min(Long.highestOneBit((long) capacity * BITS_PER_KEY - 1) << 1, 1L << 31);
+            words = new long[(int) (bits >>> 6)];
+            mask = (int) (bits - 1);
+        }
+
+        public void add(long key) {
+            long hash = mix(key);
+            int first = (int) hash;
+            int step = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = (first + i * step) & mask;
+                words[bit >>> 6] |= 1L << bit;
+            }
+            added++;
+        }
+
+        /**
+         * Returns false if the key was certainly never added.
+         */
+        public boolean mightContain(long key) {
+            long hash = mix(key);
+            int first = (int) hash;
+            int step = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = (first + i * step) & mask;
+                if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns whether the filter holds more keys than it was sized
+         * for, so that it answers maybe too often.
+         */
+        public boolean isFull() {
+            return added > capacity;
+        }
+
+        private static long mix(long key) {
+            key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+            key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return key ^ (key >>> 33);
+        }
+    }
+
+    /**
+     * Pool of task descriptions held as UTF‑8 bytes in a
+     * DescriptionArena, storing every distinct description only once.
+     * Adding a description looks it up in a hash table over the stored
+     * byte runs and hands out a handle to the existing copy if there is
+     * one, so a list full of recurring chores or imported tickets keeps
+     * a single copy of each text instead of one per task.  Descriptions
+     * are only decoded into strings when they are shown.
+     *
+     * Each entry counts the handles given out for it, and its bytes are
+     * given back to the arena once the last one is released.  Released
+     * entries are reused by later descriptions, and compacting the arena
+     * moves the bytes without changing any handle, so the rows holding
+     * the handles never need to be touched.
+     *
+     * The bytes are kept on the Java heap unless the program is run with
+     * -Dtodo.offHeap=true, which keeps them in direct memory instead.
+     */
+    private static class DescriptionPool {
+        private static final boolean OFF_HEAP =
+                Boolean.parseBoolean(System.getProperty("todo.offHeap", "false"));
+        private static final int INITIAL_CAPACITY = 16;
+        private DescriptionArena arena;
+        // Per entry: where the arena keeps its bytes, how many there are
+        // and how many handles are out.
+        private int[] addresses = new int[INITIAL_CAPACITY];
+        private int[] lengths = new int[INITIAL_CAPACITY];
+        private int[] references = new int[INITIAL_CAPACITY];
+        private int entryCount;
+        // Released entries, reused before new ones are made.
+        private int[] free = new int[INITIAL_CAPACITY];
+        private int freeCount;
+        // Hash table of entries.  A slot holds the hash of the bytes in
+        // its high half and entry + 1 in its low half, so that 0 marks an
+        // empty slot and most mismatches are seen without looking at the
+        // entry.  Collisions are resolved by linear probing.
+        private long[] slots = new long[INITIAL_CAPACITY * 2];
+        private int mask = slots.length - 1;
+        private int live;
+
+        public DescriptionPool() {
+            this(OFF_HEAP ? new DirectArena() : new HeapArena(256));
+        }
+
+        private DescriptionPool(DescriptionArena arena) {
+            this.arena = arena;
+        }
+
+        /**
+         * Returns a handle to the given description, storing it unless
+         * an identical one is already in the pool.  Every handle must be
+         * released once it is no longer used.
+         */
+        public int intern(byte[] utf8, int offset, int length) {
+            int hash = hash(utf8, offset, length);
+            int slot = hash & mask;
+            for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = (int) slots[slot] - 1;
+                if ((int) (slots[slot] >>> 32) == hash && lengths[entry] == length
+                        && arena.equal(addresses[entry], utf8, offset, length)) {
+                    references[entry]++;
+                    return entry;
+                }
+            }
+            int entry = newEntry();
+            addresses[entry] = arena.store(utf8, offset, length);
+            lengths[entry] = length;
+            references[entry] = 1;
+            slots[slot] = (long) hash << 32 | (entry + 1);
+            // Keep the table at most half full.
+            if (++live * 2 > slots.length) {
+                resize(slots.length * 2);
+            }
+            return entry;
+        }
+
+        /**
+         * Returns the handle of a description already in the pool, or -1
+         * if it is not there.  No handle is given out, so nothing needs
+         * to be released.
+         */
+        public int find(byte[] utf8, int offset, int length) {
+            int hash = hash(utf8, offset, length);
+            for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = (int) slots[slot] - 1;
+                if ((int) (slots[slot] >>> 32) == hash && lengths[entry] == length
+                        && arena.equal(addresses[entry], utf8, offset, length)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a handle to the description held in the buffer's
+         * remaining bytes, which may live outside the heap.
+         */
+        public int intern(ByteBuffer utf8) {
+            if (utf8.hasArray()) {
+                return intern(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+            }
+            byte[] bytes = new byte[utf8.remaining()];
+            utf8.duplicate().get(bytes);
+            return intern(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Gives back a handle.  The description is dropped from the pool
+         * when its last handle is released.
+         */
+        public void release(int handle) {
+            if (--references[handle] > 0) {
+                return;
+            }
+            int slot = hash(bytes(handle)) & mask;
+            while ((int) slots[slot] != handle + 1) {
+                slot = (slot + 1) & mask;
+            }
+            // Move later entries of the run into the gap whenever their
+            // home slot does not lie between the gap and themselves.
+            int gap = slot;
+            for (int next = (gap + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+                int home = (int) (slots[next] >>> 32) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    slots[gap] = slots[next];
+                    gap = next;
+                }
+            }
+            slots[gap] = 0;
+            live--;
+            arena.free(addresses[handle], lengths[handle]);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = handle;
+        }
+
+        public String decode(int handle) {
+            return arena.decode(addresses[handle], lengths[handle]);
+        }
+
+        /**
+         * Compares two descriptions byte by byte with ASCII letters in
+         * lower case, falling back to their exact bytes and then to the
+         * handles, so that only a description is equal to itself.
+         */
+        public int compareIgnoringCase(int a, int b) {
+            ByteBuffer first = bytes(a);
+            ByteBuffer second = bytes(b);
+            int length = Math.min(first.remaining(), second.remaining());
+            int exact = 0;
+            for (int i = 0; i < length; i++) {
+                int x = first.get(i) & 0xFF;
+                int y = second.get(i) & 0xFF;
+                if (x != y) {
+                    int difference = Integer.compare(lowerCase(x), lowerCase(y));
+                    if (difference != 0) {
+                        return difference;
+                    }
+                    if (exact == 0) {
+                        exact = Integer.compare(x, y);
+                    }
+                }
+            }
+            if (first.remaining() != second.remaining()) {
+                return Integer.compare(first.remaining(), second.remaining());
+            }
+            return exact != 0 ? exact : Integer.compare(a, b);
+        }
+
+        /**
+         * Compares the start of a description with a prefix whose ASCII
+         * letters are in lower case, ignoring case.  Returns 0 if the
+         * description starts with the prefix, and otherwise whether it
+         * sorts before or after all descriptions that do.
+         */
+        public int compareToPrefix(int handle, byte[] prefix) {
+            ByteBuffer bytes = bytes(handle);
+            int length = Math.min(bytes.remaining(), prefix.length);
+            for (int i = 0; i < length; i++) {
+                int difference = Integer.compare(lowerCase(bytes.get(i) & 0xFF), prefix[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return bytes.remaining() < prefix.length ? -1 : 0;
+        }
+
+        private static int lowerCase(int b) {
+            return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+        }
+
+        /**
+         * Returns the UTF‑8 bytes of a description without copying them.
+         * The buffer is only valid until the pool is next changed.
+         */
+        public ByteBuffer bytes(int handle) {
+            return arena.bytes(addresses[handle], lengths[handle]);
+        }
+
+        public int length(int handle) {
+            return lengths[handle];
+        }
+
+        /**
+         * Copies the live descriptions into a fresh arena once most of
+         * the current one is garbage.  Handles stay valid.
+         */
+        public void compactIfWasteful() {
+            if (!arena.isWasteful()) {
+                return;
+            }
+            DescriptionArena fresh = arena.fresh();
+            // Only arenas on the heap ever become wasteful.
+            for (int entry = 0; entry < entryCount; entry++) {
+                if (references[entry] > 0) {
+                    ByteBuffer bytes = bytes(entry);
+                    addresses[entry] = fresh.store(bytes.array(),
+                            bytes.arrayOffset() + bytes.position(), lengths[entry]);
+                }
+            }
+            arena = fresh;
+        }
+
+        public void clear() {
+            arena.clear();
+            entryCount = 0;
+            freeCount = 0;
+            live = 0;
+            Arrays.fill(slots, 0L);
+        }
+
+        /**
+         * Returns a copy of the pool for reading only, which must be
+         * discarded once it is no longer needed.
+         */
+        public DescriptionPool copy() {
+            DescriptionPool copy = new DescriptionPool(arena.copy());
+            copy.addresses = Arrays.copyOf(addresses, Math.max(entryCount, INITIAL_CAPACITY));
+            copy.lengths = Arrays.copyOf(lengths, Math.max(entryCount, INITIAL_CAPACITY));
+            copy.references = Arrays.copyOf(references, Math.max(entryCount, INITIAL_CAPACITY));
+            copy.entryCount = entryCount;
+            copy.free = Arrays.copyOf(free, Math.max(freeCount, INITIAL_CAPACITY));
+            copy.freeCount = freeCount;
+            copy.slots = slots.clone();
+            copy.mask = mask;
+            copy.live = live;
+            return copy;
+        }
+
+        /**
+         * Gives up a copy made by {@link #copy}.
+         */
+        public void discard() {
+            arena.discard();
+        }
+
+        private int newEntry() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (entryCount == addresses.length) {
+                int capacity = entryCount * 2;
+                addresses = Arrays.copyOf(addresses, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                references = Arrays.copyOf(references, capacity);
+            }
+            return entryCount++;
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int hash = length;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return spread(hash);
+        }
+
+        private static int hash(ByteBuffer bytes) {
+            if (bytes.hasArray()) {
+                return hash(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            }
+            int hash = bytes.remaining();
+            for (int i = bytes.position(); i < bytes.limit(); i++) {
+                hash = 31 * hash + bytes.get(i);
+            }
+            return spread(hash);
+        }
+
+        // Spreads the bits so that the low ones pick the slot.
+        private static int spread(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        private void resize(int capacity) {
+            long[] oldSlots = slots;
+            slots = new long[capacity];
+            mask = capacity - 1;
+            for (long value : oldSlots) {
+                if (value != 0) {
+                    int slot = (int) (value >>> 32) & mask;
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory that a DescriptionPool keeps its bytes in.  Each run of
+     * bytes stored is known by the address returned for it, whose
+     * meaning is up to the arena, together with its length.
+     */
+    private interface DescriptionArena {
+        /**
+         * Stores a copy of the bytes and returns their address.
+         */
+        int store(byte[] bytes, int offset, int length);
+
+        /**
+         * Gives back the space of bytes that are no longer needed.
+         */
+        void free(int address, int length);
+
+        boolean equal(int address, byte[] bytes, int offset, int length);
+
+        /**
+         * Returns the stored bytes without copying them.  The buffer is
+         * only valid until the arena is next changed.
+         */
+        ByteBuffer bytes(int address, int length);
+
+        String decode(int address, int length);
+
+        /**
+         * Returns whether enough space has been given back that copying
+         * the remaining bytes into a fresh arena is worthwhile.  Arenas
+         * that reuse freed space themselves never are.
+         */
+        boolean isWasteful();
+
+        /**
+         * Returns a new, empty arena of the same kind, sized for the
+         * bytes still in use in this one.
+         */
+        DescriptionArena fresh();
+
+        /**
+         * Returns an arena holding the same bytes at the same addresses,
+         * which is only read from while this one keeps changing.  The
+         * copy must be discarded once it is no longer needed.
+         */
+        DescriptionArena copy();
+
+        /**
+         * Gives up a copy made by {@link #copy}.
+         */
+        void discard();
+
+        void clear();
+    }
+
+    /**
+     * Description arena in a single byte array on the Java heap.  Bytes
+     * are appended at the end and freed space is only counted, to be
+     * reclaimed by moving the remaining bytes into a fresh arena once
+     * more than half of this one is garbage.
+     */
+    private static class HeapArena implements DescriptionArena {
+        private byte[] arena;
+        private int size;
+        // Bytes that have been freed.
+        private int garbage;
+
+        HeapArena(int capacity) {
+            arena = new byte[capacity];
+        }
+
+        @Override
+        public int store(byte[] bytes, int offset, int length) {
+            if (arena.length - size < length) {
+                long wanted = Math.max((long) arena.length * 2, (long) size + length);
+                if (wanted > Integer.MAX_VALUE - 8) {
+                    if ((long) size + length > Integer.MAX_VALUE - 8) {
+                        throw new IllegalStateException("Description storage is full");
+                    }
+                    wanted = Integer.MAX_VALUE - 8;
+                }
+                arena = Arrays.copyOf(arena, (int) wanted);
+            }
+            System.arraycopy(bytes, offset, arena, size, length);
+            int start = size;
+            size += length;
+            return start;
+        }
+
+        @Override
+        public void free(int address, int length) {
+            garbage += length;
+        }
+
+        @Override
+        public boolean equal(int address, byte[] bytes, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (arena[address + i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer bytes(int address, int length) {
+            return ByteBuffer.wrap(arena, address, length).slice();
+        }
+
+        @Override
+        public String decode(int address, int length) {
+            return new String(arena, address, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isWasteful() {
+            return garbage > 4096 && garbage > size / 2;
+        }
+
+        @Override
+        public DescriptionArena fresh() {
+            return new HeapArena(Math.max(size - garbage, 256));
+        }
+
+        @Override
+        public DescriptionArena copy() {
+            HeapArena copy = new HeapArena(0);
+            copy.arena = Arrays.copyOf(arena, Math.max(size, 1));
+            copy.size = size;
+            copy.garbage = garbage;
+            return copy;
+        }
+
+        @Override
+        public void discard() {
+            // The copy is an array of its own.
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+            garbage = 0;
+        }
+    }
+
+    /**
+     * Description arena in direct memory outside the Java heap, for
+     * lists whose descriptions are too large to keep on the heap.  The
+     * collector never copies or scans the bytes, so neither the heap
+     * size nor the time spent collecting it grows with the number of
+     * descriptions held.
+     *
+     * Memory is taken from the operating system one megabyte chunk at a
+     * time and handed out in blocks of whole eight‑byte granules; an
+     * address counts granules, so an int reaches sixteen gigabytes.
+     * Blocks of up to 256 granules come in every size, larger ones in
+     * powers of two, and a block that is freed is put on the free list
+     * of its size, threaded through the first bytes of the free blocks
+     * themselves.  Storing a description takes a block from the list of
+     * its size before carving a new one, so removed tasks make room for
+     * new ones and the arena never needs to be compacted.  A block
+     * larger than a chunk gets a buffer of its own spanning as many
+     * chunk addresses as it needs.
+     *
+     * A copy shares the chunks rather than duplicating them, so that
+     * writing out a copy of a large list does not need as much direct
+     * memory again.  Every block a copy can read is left alone for as
+     * long as the copy is in use: new descriptions only go into blocks
+     * that were already free when it was made, or are carved past them,
+     * and blocks freed in the meantime are only put on their free lists
+     * once every copy has been discarded.
+     */
+    private static class DirectArena implements DescriptionArena {
+        private static final int CHUNK_SHIFT = 20;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+        private static final int GRANULE_SHIFT = 3;
+        private static final int EXACT_SIZES = 256;
+        // Empty free list.
+        private static final int NONE = -1;
+        private ByteBuffer[] chunks = new ByteBuffer[16];
+        // Where each chunk begins in its buffer, which is past 0 only
+        // for the later chunks of a buffer holding one large block.
+        private int[] chunkStarts = new int[16];
+        private int chunkCount;
+        // Byte position at which the next new block is carved.
+        private long top;
+        // First block on the free list of each size class.
+        private final int[] freeLists = new int[EXACT_SIZES + 32];
+        // Number of copies sharing the chunks that have not been
+        // discarded yet.  Copies are discarded by the thread that writes
+        // them out, so the count is atomic.
+        private final AtomicInteger copies = new AtomicInteger();
+        // Blocks freed while a copy was in use, as pairs of address and
+        // size class, to be put on their free lists later.
+        private int[] deferred = new int[0];
+        private int deferredCount;
+        // The arena a copy shares its chunks with, or null.
+        private DirectArena source;
+
+        DirectArena() {
+            Arrays.fill(freeLists, NONE);
+        }
+
+        @Override
+        public int store(byte[] bytes, int offset, int length) {
+            freeDeferred();
+            int sizeClass = sizeClass(length);
+            int address = freeLists[sizeClass];
+            if (address != NONE) {
+                freeLists[sizeClass] = chunk(address).getInt(position(address));
+            } else {
+                address = allocate((long) granules(sizeClass) << GRANULE_SHIFT);
+            }
+            at(address).put(bytes, offset, length);
+            return address;
+        }
+
+        @Override
+        public void free(int address, int length) {
+            int sizeClass = sizeClass(length);
+            if (copies.get() > 0) {
+                if (deferredCount == deferred.length) {
+                    deferred = Arrays.copyOf(deferred, Math.max(deferredCount * 2, 16));
+                }
+                deferred[deferredCount++] = address;
+                deferred[deferredCount++] = sizeClass;
+                return;
+            }
+            freeDeferred();
+            push(address, sizeClass);
+        }
+
+        /**
+         * Puts the blocks freed while copies were in use on their free
+         * lists once no copy is left.
+         */
+        private void freeDeferred() {
+            if (deferredCount == 0 || copies.get() > 0) {
+                return;
+            }
+            for (int i = 0; i < deferredCount; i += 2) {
+                push(deferred[i], deferred[i + 1]);
+            }
+            deferredCount = 0;
+        }
+
+        private void push(int address, int sizeClass) {
+            chunk(address).putInt(position(address), freeLists[sizeClass]);
+            freeLists[sizeClass] = address;
+        }
+
+        @Override
+        public boolean equal(int address, byte[] bytes, int offset, int length) {
+            ByteBuffer chunk = chunk(address);
+            int position = position(address);
+            for (int i = 0; i < length; i++) {
+                if (chunk.get(position + i) != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer bytes(int address, int length) {
+            ByteBuffer view = at(address);
+            view.limit(view.position() + length);
+            return view.slice();
+        }
+
+        @Override
+        public String decode(int address, int length) {
+            byte[] bytes = new byte[length];
+            at(address).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isWasteful() {
+            return false;
+        }
+
+        @Override
+        public DescriptionArena fresh() {
+            return new DirectArena();
+        }
+
+        /**
+         * Returns a copy sharing the chunks of this arena.  The copy
+         * must not be stored into.
+         */
+        @Override
+        public DescriptionArena copy() {
+            DirectArena copy = new DirectArena();
+            copy.chunks = chunks.clone();
+            copy.chunkStarts = chunkStarts.clone();
+            copy.chunkCount = chunkCount;
+            copy.top = top;
+            copy.source = this;
+            copies.incrementAndGet();
+            return copy;
+        }
+
+        @Override
+        public void discard() {
+            if (source != null) {
+                source.copies.decrementAndGet();
+                source = null;
+            }
+        }
+
+        /**
+         * Drops all chunks.  Their memory is returned to the operating
+         * system once the collector finds the buffers unreachable, which
+         * is not before every copy sharing them has been dropped too.
+         */
+        @Override
+        public void clear() {
+            Arrays.fill(chunks, null);
+            chunkCount = 0;
+            top = 0;
+            Arrays.fill(freeLists, NONE);
+            deferredCount = 0;
+        }
+
+        private ByteBuffer chunk(int address) {
+            return chunks[address >>> (CHUNK_SHIFT - GRANULE_SHIFT)];
+        }
+
+        private int position(int address) {
+            int chunk = address >>> (CHUNK_SHIFT - GRANULE_SHIFT);
+            return chunkStarts[chunk] + ((address << GRANULE_SHIFT) & (CHUNK_SIZE - 1));
+        }
+
+        /**
+         * Returns a view of the chunk holding the block at the given
+         * address, positioned at the block, for the relative bulk get
+         * and put that Java 8 offers.  The chunk's own position and
+         * limit are never moved.
+         */
+        private ByteBuffer at(int address) {
+            ByteBuffer view = chunk(address).duplicate();
+            view.position(position(address));
+            return view;
+        }
+
+        /**
+         * Carves a new block of the given size, starting a new chunk if
+         * the block does not fit into the rest of the current one.
+         */
+        private int allocate(long size) {
+            long chunkEnd = (long) chunkCount << CHUNK_SHIFT;
+            if (top + size > chunkEnd) {
+                int span = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+                if (((long) (chunkCount + span) << (CHUNK_SHIFT - GRANULE_SHIFT)) > Integer.MAX_VALUE
+                        || (long) span << CHUNK_SHIFT > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Description storage is full");
+                }
+                ByteBuffer buffer = ByteBuffer.allocateDirect(span << CHUNK_SHIFT);
+                if (chunkCount + span > chunks.length) {
+                    int capacity = Math.max(chunks.length * 2, chunkCount + span);
+                    chunks = Arrays.copyOf(chunks, capacity);
+                    chunkStarts = Arrays.copyOf(chunkStarts, capacity);
+                }
+                for (int i = 0; i < span; i++) {
+                    chunks[chunkCount + i] = buffer;
+                    chunkStarts[chunkCount + i] = i << CHUNK_SHIFT;
+                }
+                top = chunkEnd;
+                chunkCount += span;
+            }
+            int address = (int) (top >>> GRANULE_SHIFT);
+            top += size;
+            return address;
+        }
+
+        private static int sizeClass(int length) {
+            int granules = Math.max(1, (length + 7) >>> GRANULE_SHIFT);
+            if (granules <= EXACT_SIZES) {
+                return granules - 1;
+            }
+            // Round up to a power of two: 512 granules is class 256.
+            return EXACT_SIZES + (32 - Integer.numberOfLeadingZeros(granules - 1)) - 9;
+        }
+
+        private static int granules(int sizeClass) {
+            return sizeClass < EXACT_SIZES ? sizeClass + 1 : 1 << (sizeClass - EXACT_SIZES + 9);
+        }
+    }
+
+    /**
+     * In‑memory table of tasks stored column by column in primitive
+     * arrays rather than as one object per task.  Priorities, due dates
+     * and completion days (both as epoch days) live in int arrays, the
+     * completion flags in a bitset, and each row holds a handle into a
+     * DescriptionPool that stores every distinct description once as
+     * UTF‑8 bytes.  A task costs about twenty‑four bytes plus its
+     * description, or nothing more when the same text is already
+     * stored, instead of three objects with their headers, and scans
+     * over a single field walk one contiguous array.
+     *
+     * Rows are numbered from 0.  Removing a task only marks its row as
+     * removed, leaving a tombstone that every lookup skips, so a removal
+     * takes the same short time wherever the row is.  {@link #compact}
+     * later drops all tombstones in a single pass, moving the remaining
+     * rows down without changing their order; row numbers are therefore
+     * only meaningful until the next compaction.  Every task also has a
+     * stable id, handed out in increasing order when the task is created
+     * and stored with it, and a hash index from ids to rows finds a task
+     * by id in constant time.  {@link #get} builds a Task from a row for display; changes
+     * always go through the table.  The table also remembers which rows
+     * were changed since a storage engine last wrote them out.
+     *
+     * The table also keeps two indexes of its rows.  The due date
+     * order sorts them by due date, then by id, and answers queries for
+     * the tasks due in a range of dates with two binary searches.  The
+     * priority buckets split that order by priority, giving the order
+     * the task view lists the rows in: by priority, then by due date,
+     * then by id.  Showing the list walks the buckets without copying
+     * or sorting anything, and the first k tasks are found in O(k).  A
+     * search index of the words in the descriptions, built when the
+     * list is first searched, finds the tasks containing given words,
+     * and a suggestion index of the distinct descriptions completes a
+     * description being typed.
+     */
+    private static class TaskTable {
+        private static final int INITIAL_CAPACITY = 16;
+        // Id of a task read from a file that did not store one.  Such
+        // rows are given an id by assignMissingIds.
+        public static final long NO_ID = 0;
+        // Completion day of a pending task, and of a task read from a
+        // file written before completion days were recorded until
+        // assignMissingCompletedDays gives it one.
+        public static final int NO_DAY = Integer.MIN_VALUE;
+
+        private int[] priorities = new int[INITIAL_CAPACITY];
+        private int[] epochDays = new int[INITIAL_CAPACITY];
+        private int[] descriptions = new int[INITIAL_CAPACITY];
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private int[] completedDays = new int[INITIAL_CAPACITY];
+        private LongIntMap rowsById = new LongIntMap();
+        private long nextId = 1;
+        private final BitSet completed = new BitSet();
+        private final BitSet dirty = new BitSet();
+        // Tombstones of removed rows, and their number.
+        private final BitSet removed = new BitSet();
+        private int removedCount;
+        private DescriptionPool descriptionPool = new DescriptionPool();
+        private int size;
+        private final RowOrder dueDateOrder = new RowOrder(this::compareByDueDate);
+        private final PriorityBuckets priorityBuckets = new PriorityBuckets(this::compareByDueDate);
+        private final SearchIndex searchIndex = new SearchIndex();
+        private final SuggestionIndex suggestionIndex = new SuggestionIndex();
+        private final TrigramIndex trigramIndex = new TrigramIndex();
+        private final FilterIndex filterIndex = new FilterIndex();
+        // Bloom filter over the description and due date of the rows,
+        // or null until duplicates are first looked for.
+        private BloomFilter duplicateFilter;
+
+        /**
+         * Returns the number of rows, including removed rows that have
+         * not been compacted away yet.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the number of tasks, not counting removed rows.
+         */
+        public int count() {
+            return size - removedCount;
+        }
+
+        public boolean isEmpty() {
+            return count() == 0;
+        }
+
+        /**
+         * Appends a new task with a freshly assigned id and returns its
+         * row.
+         */
+        public int add(String description, int epochDay, int priority, boolean done) {
+            return add(description, epochDay, priority, done, nextId);
+        }
+
+        /**
+         * Appends a task with the given id, or without one if the id is
+         * {@link #NO_ID}, and returns its row.
+         */
+        public int add(String description, int epochDay, int priority, boolean done, long id) {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            return add(bytes, 0, bytes.length, epochDay, priority, done, id);
+        }
+
+        /**
+         * Appends a task whose description is given as UTF‑8 bytes and
+         * returns its row.  An id that is already taken is treated like
+         * a missing one.
+         */
+        public int add(byte[] utf8, int offset, int length, int epochDay, int priority, boolean done,
+                long id) {
+            return addRow(descriptionPool.intern(utf8, offset, length), epochDay, priority, done, id);
+        }
+
+        private int addRow(int description, int epochDay, int priority, boolean done, long id) {
+            if (size == priorities.length) {
+                int capacity = size * 2;
+                priorities = Arrays.copyOf(priorities, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                completedDays = Arrays.copyOf(completedDays, capacity);
+            }
+            int row = size++;
+            priorities[row] = priority;
+            epochDays[row] = epochDay;
+            descriptions[row] = description;
+            completedDays[row] = NO_DAY;
+            if (id > NO_ID && rowsById.putIfAbsent(id, row)) {
+                ids[row] = id;
+                nextId = Math.max(nextId, id + 1);
+            } else {
+                ids[row] = NO_ID;
+            }
+            completed.set(row, done);
+            dirty.set(row);
+            dueDateOrder.added(row, size);
+            priorityBuckets.added(row, priority, done);
+            filterIndex.added(row, priority, done);
+            searchIndex.added(this, row);
+            suggestionIndex.added(descriptionPool, description);
+            trigramIndex.added(descriptionPool, description);
+            if (duplicateFilter != null) {
+                if (duplicateFilter.isFull()) {
+                    duplicateFilter = null;
+                } else {
+                    duplicateFilter.add(taskKey(description, epochDay));
+                }
+            }
+            return row;
+        }
+
+        /**
+         * Appends a task whose description is given as bytes in the
+         * given character set.  Plain ASCII, and UTF‑8 input, are added
+         * to the description pool as they are.
+         */
+        public int add(byte[] bytes, int offset, int length, Charset charset,
+                int epochDay, int priority, boolean done, long id) {
+            if (charset.equals(StandardCharsets.UTF_8) || isAscii(bytes, offset, length)) {
+                return add(bytes, offset, length, epochDay, priority, done, id);
+            }
+            return add(new String(bytes, offset, length, charset), epochDay, priority, done, id);
+        }
+
+        /**
+         * Appends every task of another table, keeping their order and
+         * their ids.
+         */
+        public void addAll(TaskTable other) {
+            for (int row = 0; row < other.size; row++) {
+                if (other.removed.get(row)) {
+                    continue;
+                }
+                int added = addRow(descriptionPool.intern(other.descriptionBytes(row)),
+                        other.epochDays[row], other.priorities[row], other.completed.get(row),
+                        other.ids[row]);
+                completedDays[added] = other.completedDays[row];
+                dirty.set(added, other.dirty.get(row));
+            }
+        }
+
+        /**
+         * Gives every row without an id a fresh one, in row order, and
+         * marks those rows dirty so that the ids are written out on the
+         * next save.  Called once a file written before tasks had ids
+         * has been loaded.
+         *
+         * @return the number of ids assigned
+         */
+        public int assignMissingIds() {
+            int assigned = 0;
+            for (int row = 0; row < size; row++) {
+                if (ids[row] == NO_ID && !removed.get(row)) {
+                    ids[row] = nextId++;
+                    rowsById.put(ids[row], row);
+                    dirty.set(row);
+                    assigned++;
+                }
+            }
+            if (assigned > 0) {
+                dueDateOrder.invalidate();
+                priorityBuckets.invalidate();
+            }
+            return assigned;
+        }
+
+        /**
+         * Gives every completed row without a completion day the given
+         * day, and marks those rows dirty so that the day is written out
+         * on the next save.  Called once a file written before
+         * completion days were recorded has been loaded.
+         *
+         * @return the rows that were given the day
+         */
+        public int[] assignMissingCompletedDays(int day) {
+            int[] rows = new int[0];
+            int assigned = 0;
+            for (int row = completed.nextSetBit(0); row >= 0 && row < size; row = completed.nextSetBit(row + 1)) {
+                if (completedDays[row] == NO_DAY && !removed.get(row)) {
+                    if (assigned == rows.length) {
+                        rows = Arrays.copyOf(rows, Math.max(assigned * 2, 16));
+                    }
+                    completedDays[row] = day;
+                    dirty.set(row);
+                    rows[assigned++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, assigned);
+        }
+
+        public long id(int row) {
+            return ids[row];
+        }
+
+        /**
+         * Returns the id the next new task will be given.  Every lower
+         * id has been handed out already, and stays used up after its
+         * task is removed or archived, so the value is saved with the
+         * tasks.
+         */
+        public long nextId() {
+            return nextId;
+        }
+
+        /**
+         * Makes sure no id below the given one is handed out, for an id
+         * counter read back from a file.  The ids of the loaded tasks
+         * count as well, so the higher of the two wins.
+         */
+        public void reserveIds(long next) {
+            nextId = Math.max(nextId, next);
+        }
+
+        /**
+         * Returns the row holding the task with the given id, or -1 if
+         * there is no such task.
+         */
+        public int rowOf(long id) {
+            return id > NO_ID ? rowsById.get(id) : -1;
+        }
+
+        /**
+         * Passes every row to the action in the order of the task view.
+         */
+        public void forEachInViewOrder(IntConsumer action) {
+            buckets().forEach(row -> {
+                if (!removed.get(row)) {
+                    action.accept(row);
+                }
+            });
+        }
+
+        /**
+         * Returns the rows of the tasks due between the two epoch days,
+         * both included, in due date order.  Takes O(log n + k) time
+         * for k tasks in the range.
+         */
+        public int[] rowsDueBetween(int fromDay, int toDay) {
+            RowOrder order = built(dueDateOrder);
+            int from = order.search(row -> epochDays[row] < fromDay, size);
+            int to = order.search(row -> epochDays[row] <= toDay, size);
+            int[] rows = new int[Math.max(to - from, 0)];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int row = order.row(i);
+                if (!removed.get(row)) {
+                    rows[count++] = row;
+                }
+            }
+            return count == rows.length ? rows : Arrays.copyOf(rows, count);
+        }
+
+        /**
+         * Returns the rows of the pending tasks due before the given
+         * epoch day, in due date order.
+         */
+        public int[] overdueRows(int today) {
+            int[] due = rowsDueBetween(Integer.MIN_VALUE, today - 1);
+            int count = 0;
+            for (int row : due) {
+                if (!completed.get(row)) {
+                    due[count++] = row;
+                }
+            }
+            return Arrays.copyOf(due, count);
+        }
+
+        /**
+         * Returns the tasks whose descriptions contain all words of at
+         * least one of the given clauses, in the order the task view
+         * lists them.  The search index is built on first use.
+         */
+        public int[] search(List<String> clauses) {
+            if (!searchIndex.isBuilt()) {
+                searchIndex.build(this, size, removed);
+            }
+            BitSet matches = searchIndex.search(clauses);
+            matches.andNot(removed);
+            return inViewOrder(matches.stream().toArray());
+        }
+
+        /**
+         * Returns the tasks that match all of the given conditions, in
+         * the order the task view lists them: completed ones if done is
+         * true, pending ones if it is false and either if it is null;
+         * those whose priority number is at most maxPriority; and those
+         * due before the epoch day dueBefore, unless it is
+         * Integer.MAX_VALUE.  The conditions are combined as bitmaps of
+         * rows, which are built on first use.
+         */
+        public int[] filter(Boolean done, int maxPriority, int dueBefore) {
+            if (!filterIndex.isBuilt()) {
+                filterIndex.build(size, priorities, completed, removed);
+            }
+            RoaringBitmap matches = filterIndex.withPriorityAtMost(maxPriority);
+            if (done != null) {
+                matches = done ? matches.and(filterIndex.completed())
+                        : matches.andNot(filterIndex.completed());
+            }
+            if (dueBefore != Integer.MAX_VALUE) {
+                matches = matches.and(RoaringBitmap.of(rowsDueBetween(Integer.MIN_VALUE, dueBefore - 1)));
+            }
+            return inViewOrder(matches.toArray());
+        }
+
+        /**
+         * Puts rows that are all tasks, none of them twice, in the order
+         * of the task view.
+         */
+        private int[] inViewOrder(int[] rows) {
+            if (rows.length > size / 16) {
+                // With this many rows, picking them out of the view
+                // order is cheaper than sorting them.
+                BitSet members = new BitSet(size);
+                for (int row : rows) {
+                    members.set(row);
+                }
+                int[] count = {0};
+                forEachInViewOrder(row -> {
+                    if (members.get(row)) {
+                        rows[count[0]++] = row;
+                    }
+                });
+                return rows;
+            }
+            RowOrder.sort(rows, rows.length, this::compareByView);
+            return rows;
+        }
+
+        /**
+         * Returns at most limit distinct descriptions starting with the
+         * given prefix, ignoring case, those used by the most tasks
+         * first.  The suggestion index is built on first use.
+         */
+        public List<String> suggest(String prefix, int limit) {
+            if (!suggestionIndex.isBuilt()) {
+                suggestionIndex.build(descriptionPool, descriptions, size, removed);
+            }
+            byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] >= 'A' && bytes[i] <= 'Z') {
+                    bytes[i] += 'a' - 'A';
+                }
+            }
+            List<String> suggestions = new ArrayList<>();
+            for (int handle : suggestionIndex.suggest(descriptionPool, bytes, limit)) {
+                suggestions.add(descriptionPool.decode(handle));
+            }
+            return suggestions;
+        }
+
+        /**
+         * Returns the rows of at most limit tasks whose descriptions are
+         * similar to the query, allowing for typos: those with the most
+         * similar description first, and tasks sharing a description in
+         * the order of the task view.  The trigram index is built on
+         * first use.
+         */
+        public int[] fuzzySearch(String query, int limit) {
+            if (!trigramIndex.isBuilt()) {
+                trigramIndex.build(descriptionPool, descriptions, size, removed);
+            }
+            int[] handles = trigramIndex.search(descriptionPool, query, limit);
+            if (handles.length == 0) {
+                return new int[0];
+            }
+            BitSet found = new BitSet();
+            for (int handle : handles) {
+                found.set(handle);
+            }
+            int[] rows = new int[16];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (found.get(descriptions[row]) && !removed.get(row)) {
+                    if (count == rows.length) {
+                        rows = Arrays.copyOf(rows, count * 2);
+                    }
+                    rows[count++] = row;
+                }
+            }
+            RowOrder.sort(rows, count, (a, b) -> {
+                int rankA = rank(handles, descriptions[a]);
+                int rankB = rank(handles, descriptions[b]);
+                return rankA != rankB ? Integer.compare(rankA, rankB) : compareByView(a, b);
+            });
+            return Arrays.copyOf(rows, Math.min(count, limit));
+        }
+
+        private static int rank(int[] handles, int handle) {
+            int rank = 0;
+            while (handles[rank] != handle) {
+                rank++;
+            }
+            return rank;
+        }
+
+        /**
+         * Returns whether a task with the given description and due date
+         * is in the table.  A description the pool has never seen cannot
+         * belong to any task, and the Bloom filter rules out most other
+         * new tasks; only when it cannot are the tasks due that day
+         * looked at.  The filter is built on first use.
+         */
+        public boolean containsTask(String description, int epochDay) {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            int handle = descriptionPool.find(bytes, 0, bytes.length);
+            if (handle < 0) {
+                return false;
+            }
+            if (duplicateFilter == null) {
+                duplicateFilter = new BloomFilter(count() * 2);
+                for (int row = 0; row < size; row++) {
+                    if (!removed.get(row)) {
+                        duplicateFilter.add(taskKey(descriptions[row], epochDays[row]));
+                    }
+                }
+            }
+            if (!duplicateFilter.mightContain(taskKey(handle, epochDay))) {
+                return false;
+            }
+            for (int row : rowsDueBetween(epochDay, epochDay)) {
+                if (descriptions[row] == handle) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the rows whose description and due date repeat those of
+         * an earlier row.  One pass builds the Bloom filter and picks out
+         * the rows it cannot rule out; only the keys of those are then
+         * held exactly, and a second pass finds the first row with each
+         * of them.  A candidate is a duplicate unless it is that row.
+         */
+        public int[] duplicateRows() {
+            BloomFilter filter = new BloomFilter(count() * 2);
+            LongIntMap firstRows = new LongIntMap();
+            int[] candidates = new int[16];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (removed.get(row)) {
+                    continue;
+                }
+                long key = taskKey(descriptions[row], epochDays[row]);
+                if (filter.mightContain(key)) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = row;
+                    firstRows.put(key, Integer.MAX_VALUE);
+                }
+                filter.add(key);
+            }
+            duplicateFilter = filter;
+            if (count == 0) {
+                return new int[0];
+            }
+            for (int row = 0; row < size; row++) {
+                if (!removed.get(row)) {
+                    long key = taskKey(descriptions[row], epochDays[row]);
+                    if (firstRows.get(key) == Integer.MAX_VALUE) {
+                        firstRows.put(key, row);
+                    }
+                }
+            }
+            int duplicates = 0;
+            for (int i = 0; i < count; i++) {
+                int row = candidates[i];
+                if (firstRows.get(taskKey(descriptions[row], epochDays[row])) != row) {
+                    candidates[duplicates++] = row;
+                }
+            }
+            return Arrays.copyOf(candidates, duplicates);
+        }
+
+        /**
+         * Combines a description handle and a due date into one key.  The
+         * handle is offset by one so that no key is zero, which the
+         * LongIntMap reserves for empty slots.
+         */
+        private static long taskKey(int description, int epochDay) {
+            return (long) (description + 1) << 32 | (epochDay & 0xFFFFFFFFL);
+        }
+
+        public Task get(int row) {
+            Task task = new Task(descriptionPool, descriptions[row], epochDays[row], priorities[row]);
+            task.setCompleted(completed.get(row));
+            return task;
+        }
+
+        public String description(int row) {
+            return descriptionPool.decode(descriptions[row]);
+        }
+
+        /**
+         * Returns the UTF‑8 bytes of a description without copying them.
+         * The buffer is only valid until the table is next changed.
+         */
+        public ByteBuffer descriptionBytes(int row) {
+            return descriptionPool.bytes(descriptions[row]);
+        }
+
+        public int descriptionLength(int row) {
+            return descriptionPool.length(descriptions[row]);
+        }
+
+        public int priority(int row) {
+            return priorities[row];
+        }
+
+        public int epochDay(int row) {
+            return epochDays[row];
+        }
+
+        public boolean isCompleted(int row) {
+            return completed.get(row);
+        }
+
+        public void setCompleted(int row, boolean done) {
+            if (completed.get(row) != done) {
+                completed.set(row, done);
+                completedDays[row] = NO_DAY;
+                dirty.set(row);
+                priorityBuckets.completionChanged(priorities[row], done);
+                if (!removed.get(row)) {
+                    filterIndex.completionChanged(row, done);
+                }
+            }
+        }
+
+        /**
+         * Returns the epoch day the task was completed on, or
+         * {@link #NO_DAY} if it is pending or the day is not known.
+         */
+        public int completedDay(int row) {
+            return completedDays[row];
+        }
+
+        /**
+         * Records the epoch day a completed task was completed on.
+         */
+        public void setCompletedDay(int row, int day) {
+            if (completedDays[row] != day) {
+                completedDays[row] = day;
+                dirty.set(row);
+            }
+        }
+
+        public boolean isDirty(int row) {
+            return dirty.get(row);
+        }
+
+        public void markClean(int row) {
+            dirty.clear(row);
+        }
+
+        /**
+         * Returns the completion flags of all rows.  The bitset is the
+         * table's own and must not be changed by the caller.
+         */
+        public BitSet completedRows() {
+            return completed;
+        }
+
+        /**
+         * Returns the number of pending tasks with the given priority,
+         * which the priority buckets keep count of.
+         */
+        public int countPending(int priority) {
+            return buckets().countPending(priority);
+        }
+
+        /**
+         * Returns the rows of the limit most urgent pending tasks, in
+         * the order of the task view, read off the priority buckets
+         * without sorting anything.
+         */
+        public int[] nextPending(int limit) {
+            return buckets().firstPending(limit, completed, removed);
+        }
+
+        /**
+         * Removes a row by turning it into a tombstone.  The row keeps
+         * its number and its data until the table is compacted, but is
+         * no longer found by id or listed by any index.
+         */
+        public void remove(int row) {
+            if (removed.get(row)) {
+                return;
+            }
+            removed.set(row);
+            removedCount++;
+            if (ids[row] != NO_ID) {
+                rowsById.remove(ids[row]);
+            }
+            priorityBuckets.removed(priorities[row], completed.get(row));
+            filterIndex.removed(row, priorities[row]);
+            suggestionIndex.removed(descriptionPool, descriptions[row]);
+            trigramIndex.removed(descriptions[row]);
+        }
+
+        public boolean isRemoved(int row) {
+            return removed.get(row);
+        }
+
+        public boolean hasRemovedRows() {
+            return removedCount > 0;
+        }
+
+        /**
+         * Returns whether enough rows have been removed that compacting
+         * the table is worthwhile, which is once a quarter of its rows
+         * are tombstones.
+         */
+        public boolean needsCompaction() {
+            return removedCount > 0 && removedCount * 4L >= size;
+        }
+
+        /**
+         * Drops every removed row in a single pass, moving the remaining
+         * rows down so that they keep their order, and renumbers the
+         * indexes to match.  Costs time linear in the size of the table
+         * however many rows were removed.
+         */
+        public void compact() {
+            if (removedCount == 0) {
+                return;
+            }
+            int[] newRows = new int[size];
+            int kept = 0;
+            for (int row = 0; row < size; row++) {
+                if (removed.get(row)) {
+                    newRows[row] = -1;
+                    descriptionPool.release(descriptions[row]);
+                    continue;
+                }
+                newRows[row] = kept;
+                if (kept != row) {
+                    priorities[kept] = priorities[row];
+                    epochDays[kept] = epochDays[row];
+                    descriptions[kept] = descriptions[row];
+                    ids[kept] = ids[row];
+                    completedDays[kept] = completedDays[row];
+                    if (ids[kept] != NO_ID) {
+                        rowsById.put(ids[kept], kept);
+                    }
+                    completed.set(kept, completed.get(row));
+                    dirty.set(kept, dirty.get(row));
+                }
+                kept++;
+            }
+            completed.clear(kept, size);
+            dirty.clear(kept, size);
+            removed.clear();
+            removedCount = 0;
+            dueDateOrder.compact(newRows, size);
+            priorityBuckets.compact(newRows);
+            filterIndex.compact(newRows);
+            searchIndex.compact(newRows);
+            size = kept;
+            descriptionPool.compactIfWasteful();
+            suggestionIndex.compact();
+            trigramIndex.compact();
+        }
+
+        public void clear() {
+            size = 0;
+            descriptionPool.clear();
+            completed.clear();
+            dirty.clear();
+            removed.clear();
+            removedCount = 0;
+            rowsById.clear();
+            nextId = 1;
+            dueDateOrder.invalidate();
+            priorityBuckets.invalidate();
+            filterIndex.invalidate();
+            searchIndex.invalidate();
+            suggestionIndex.invalidate();
+            trigramIndex.invalidate();
+            duplicateFilter = null;
+        }
+
+        /**
+         * Returns a copy of the table, for writing out in the background
+         * while this one keeps changing.  Removed rows are left out of
+         * the copy.  The copy shares the stored descriptions with this
+         * table, is only to be read and must be discarded once it has
+         * been written out.
+         */
+        public TaskTable copy() {
+            if (removedCount > 0) {
+                return copyLiveRows();
+            }
+            TaskTable copy = new TaskTable();
+            copy.priorities = Arrays.copyOf(priorities, Math.max(size, INITIAL_CAPACITY));
+            copy.epochDays = Arrays.copyOf(epochDays, Math.max(size, INITIAL_CAPACITY));
+            copy.descriptions = Arrays.copyOf(descriptions, Math.max(size, INITIAL_CAPACITY));
+            copy.ids = Arrays.copyOf(ids, Math.max(size, INITIAL_CAPACITY));
+            copy.completedDays = Arrays.copyOf(completedDays, Math.max(size, INITIAL_CAPACITY));
+            copy.rowsById = rowsById.copy();
+            copy.nextId = nextId;
+            copy.completed.or(completed);
+            copy.dirty.or(dirty);
+            copy.descriptionPool = descriptionPool.copy();
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * Copies the rows that have not been removed, moved down as by
+         * {@link #compact}.
+         */
+        private TaskTable copyLiveRows() {
+            TaskTable copy = new TaskTable();
+            int capacity = Math.max(count(), INITIAL_CAPACITY);
+            copy.priorities = new int[capacity];
+            copy.epochDays = new int[capacity];
+            copy.descriptions = new int[capacity];
+            copy.ids = new long[capacity];
+            copy.completedDays = new int[capacity];
+            int to = 0;
+            for (int row = removed.nextClearBit(0); row < size; row = removed.nextClearBit(row + 1)) {
+                copy.priorities[to] = priorities[row];
+                copy.epochDays[to] = epochDays[row];
+                copy.descriptions[to] = descriptions[row];
+                copy.ids[to] = ids[row];
+                copy.completedDays[to] = completedDays[row];
+                copy.completed.set(to, completed.get(row));
+                copy.dirty.set(to, dirty.get(row));
+                if (ids[row] != NO_ID) {
+                    copy.rowsById.put(ids[row], to);
+                }
+                to++;
+            }
+            copy.nextId = nextId;
+            copy.descriptionPool = descriptionPool.copy();
+            copy.size = to;
+            return copy;
+        }
+
+        /**
+         * Gives up a copy made by {@link #copy} once it has been written
+         * out, so that the table it was made from can reuse the space of
+         * descriptions removed in the meantime.
+         */
+        public void discard() {
+            descriptionPool.discard();
+        }
+
+        private RowOrder built(RowOrder order) {
+            if (!order.isBuilt()) {
+                order.build(size);
+            }
+            return order;
+        }
+
+        private PriorityBuckets buckets() {
+            if (!priorityBuckets.isBuilt()) {
+                priorityBuckets.build(built(dueDateOrder), size, priorities, completed, removed);
+            }
+            return priorityBuckets;
+        }
+
+        /**
+         * Compares two rows by due date.  Ties fall back to the id, so
+         * that every row has exactly one place and tasks due on the same
+         * day keep the order they were created in.
+         */
+        private int compareByDueDate(int a, int b) {
+            if (epochDays[a] != epochDays[b]) {
+                return Integer.compare(epochDays[a], epochDays[b]);
+            }
+            if (ids[a] != ids[b]) {
+                return Long.compare(ids[a], ids[b]);
+            }
+            return Integer.compare(a, b);
+        }
+
+        /**
+         * Compares two rows in the order of the task view: by priority,
+         * then by due date.
+         */
+        private int compareByView(int a, int b) {
+            if (priorities[a] != priorities[b]) {
+                return Integer.compare(priorities[a], priorities[b]);
+            }
+            return compareByDueDate(a, b);
+        }
+
+        private static boolean isAscii(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Append‑only change log for the task list.  Instead of rewriting
+     * the whole tasks file after every change, each add, complete and
+     * remove operation is appended to this log as one compact record,
+     * so the cost of persisting a change is proportional to the change
+     * itself rather than to the size of the list.  On startup the log
+     * is replayed on top of the last snapshot to rebuild the list.
+     *
+     * Records are single lines in one of the following forms:
+     * <pre>
+     * N|id|dueDate|priority|completed|description
+     * F|id|completedDate
+     * D|id
+     * </pre>
+     * for a new, a finished and a deleted task, where id is the task's
+     * stable id.  The description is stored last so that it may contain
+     * any character except a line break.
+     * A final line that is not terminated by a line break is the
+     * result of an interrupted write and is ignored during replay.
+     *
+     * The first line of the log is a #gen=N header naming the snapshot
+     * generation the log applies to.  A #next=N line after it holds the
+     * id counter when the log was started; the ids handed out since are
+     * all in N records.  Compaction copies the list and appends a #gen
+     * line for the next generation to the log, then writes the copy as
+     * the new snapshot while changes go on being logged, and finally
+     * replaces the log by one holding only the records after that mark.
+     * A log left behind by a crash before the last step is of an older
+     * generation than the snapshot; it is replayed from the mark on, or
+     * discarded if it has none, instead of being applied twice.
+     */
+    private static class TaskJournal {
+        private final File file;
+        private BufferedWriter writer;
+        private FileChannel channel;
+        private long generation;
+        // Id counter written to the header of a new log.
+        private long nextId;
+        // Highest generation a compaction has marked the log with, and
+        // the length of the log just after the latest mark.
+        private long markedGeneration;
+        private long markOffset;
+        // Number of records appended since the program started.  Used
+        // as the version number for group commits.
+        private long appended;
+
+        public TaskJournal(String fileName) {
+            this.file = new File(fileName);
+        }
+
+        public void logAdded(TaskTable tasks, int row) throws IOException {
+            append("N|" + tasks.id(row)
+                    + "|" + DateText.format(tasks.epochDay(row))
+                    + "|" + tasks.priority(row)
+                    + "|" + tasks.isCompleted(row)
+                    + "|" + tasks.description(row));
+        }
+
+        public void logCompleted(long id, int day) throws IOException {
+            append("F|" + id + "|" + DateText.format(day));
+        }
+
+        public void logRemoved(long id) throws IOException {
+            append("D|" + id);
+        }
+
+        /**
+         * Logs the removal of several tasks at once, handing all the
+         * records to the operating system in one write.
+         */
+        public void logRemoved(long[] ids) throws IOException {
+            String[] records = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                records[i] = "D|" + ids[i];
+            }
+            append(records);
+        }
+
+        /**
+         * Replays every complete record in the log against the given
+         * list.  Records that cannot be applied (for example because
+         * they refer to a task that does not exist) are skipped.  A log
+         * written for a different snapshot generation is only replayed
+         * from the mark for the loaded snapshot on; without one it is
+         * stale and truncated rather than replayed.
+         *
+         * @param tasks the table to apply the logged operations to
+         * @param snapshotGeneration generation of the loaded snapshot
+         * @return the number of records applied
+         */
+        public int replay(TaskTable tasks, long snapshotGeneration) throws IOException {
+            generation = snapshotGeneration;
+            markedGeneration = snapshotGeneration;
+            nextId = tasks.nextId();
+            if (!file.exists()) {
+                return 0;
+            }
+            // In a log of an older generation, everything up to the mark
+            // a compaction left for this snapshot is already in it.
+            String mark = readGeneration(file) == snapshotGeneration
+                    ? null : GENERATION_PREFIX + snapshotGeneration;
+            int applied = 0;
+            try (Reader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                StringBuilder line = new StringBuilder();
+                int c;
+                while ((c = reader.read()) != -1) {
+                    if (c != '\n') {
+                        line.append((char) c);
+                        continue;
+                    }
+                    String record = line.toString();
+                    if (record.startsWith(GENERATION_PREFIX)) {
+                        markedGeneration = Math.max(markedGeneration, parseGeneration(record));
+                    }
+                    if (mark != null) {
+                        if (record.equals(mark)) {
+                            mark = null;
+                        }
+                    } else if (apply(record, tasks)) {
+                        applied++;
+                    }
+                    line.setLength(0);
+                }
+                // Anything left in the buffer is a torn final record.
+            }
+            nextId = tasks.nextId();
+            if (mark != null) {
+                // A stale log with nothing left to apply.
+                reset(snapshotGeneration, nextId);
+            }
+            return applied;
+        }
+
+        private static boolean apply(String record, TaskTable tasks) {
+            if (record.startsWith(NEXT_ID_PREFIX)) {
+                tasks.reserveIds(parseHeader(record, NEXT_ID_PREFIX));
+                return false;
+            }
+            if (record.startsWith("#")) {
+                return false; // Header line
+            }
+            if (record.length() < 3 || record.charAt(1) != '|') {
+                return false;
+            }
+            char op = record.charAt(0);
+            if (op == 'N') {
+                String[] parts = record.split("\\|", 6);
+                if (parts.length != 6) {
+                    return false;
+                }
+                long id;
+                LocalDate date;
+                int pr;
+                try {
+                    id = Long.parseLong(parts[1]);
+                    date = LocalDate.parse(parts[2], DATE_FORMAT);
+                    pr = Integer.parseInt(parts[3]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    return false;
+                }
+                // A task without an id, or with one that is already
+                // taken, gets a fresh id at once, so that it is numbered
+                // the same way on every replay and later records of the
+                // log find it.
+                if (id != TaskTable.NO_ID && tasks.rowOf(id) < 0) {
+                    tasks.add(parts[5], (int) date.toEpochDay(), pr, Boolean.parseBoolean(parts[4]), id);
+                } else {
+                    tasks.add(parts[5], (int) date.toEpochDay(), pr, Boolean.parseBoolean(parts[4]));
+                }
+                return true;
+            }
+            if (op != 'F' && op != 'D') {
+                return false;
+            }
+            // F records carry a second field, the completion date.
+            int keyEnd = op == 'F' ? record.indexOf('|', 2) : record.length();
+            if (keyEnd < 0) {
+                return false;
+            }
+            long key;
+            int day = TaskTable.NO_DAY;
+            try {
+                key = Long.parseLong(record.substring(2, keyEnd));
+                if (op == 'F') {
+                    day = (int) LocalDate.parse(record.substring(keyEnd + 1), DATE_FORMAT).toEpochDay();
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                return false;
+            }
+            int row = tasks.rowOf(key);
+            if (row < 0) {
+                return false;
+            }
+            if (op == 'F') {
+                tasks.setCompleted(row, true);
+                tasks.setCompletedDay(row, day);
+            } else {
+                tasks.remove(row);
+            }
+            return true;
+        }
+
+        private synchronized void append(String... records) throws IOException {
+            open();
+            for (String record : records) {
+                writer.write(record);
+                writer.write('\n');
+            }
+            // Hand the records to the operating system straight away so
+            // that they survive the program being killed.  Forcing them
+            // to the disk is left to sync() so that it can be batched.
+            writer.flush();
+            appended += records.length;
+        }
+
+        private void open() throws IOException {
+            if (writer == null) {
+                boolean empty = file.length() == 0;
+                FileOutputStream out = new FileOutputStream(file, true);
+                channel = out.getChannel();
+                writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                if (empty) {
+                    writer.write(GENERATION_PREFIX + generation);
+                    writer.write('\n');
+                    writer.write(NEXT_ID_PREFIX + nextId);
+                    writer.write('\n');
+                }
+            }
+        }
+
+        /**
+         * Appends a #gen=N line for a snapshot about to be written from
+         * the list as it is now, and returns N.  Every generation is
+         * marked at most once, so a replay that has to skip to the mark
+         * finds the right one.
+         */
+        public synchronized long mark(long snapshotGeneration) throws IOException {
+            markedGeneration = Math.max(markedGeneration, snapshotGeneration) + 1;
+            open();
+            writer.write(GENERATION_PREFIX + markedGeneration);
+            writer.write('\n');
+            writer.flush();
+            markOffset = channel.size();
+            return markedGeneration;
+        }
+
+        /**
+         * Replaces the log by one for the given snapshot generation and
+         * id counter holding only the records appended since the last
+         * mark.  Called once the snapshot for that mark is in place.
+         * The new log is written next to the old one and moved over it,
+         * so a crash leaves one or the other, and until the move the
+         * old log is replayed from the mark on.
+         */
+        public synchronized void rotate(long newGeneration, long newNextId) throws IOException {
+            close();
+            Path temp = Paths.get(file.getPath() + ".tmp");
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.wrap((GENERATION_PREFIX + newGeneration + "\n"
+                        + NEXT_ID_PREFIX + newNextId + "\n").getBytes(StandardCharsets.US_ASCII));
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                long position = markOffset;
+                long size = in.size();
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            generation = newGeneration;
+            nextId = newNextId;
+        }
+
+        /**
+         * Returns the number of records appended so far.
+         */
+        public synchronized long appended() {
+            return appended;
+        }
+
+        /**
+         * Forces every record appended so far to the storage device.
+         *
+         * @return the number of appended records that are now durable
+         */
+        public synchronized long sync() throws IOException {
+            if (writer != null) {
+                writer.flush();
+                channel.force(false);
+            }
+            return appended;
+        }
+
+        /**
+         * Returns the current size of the log in bytes.
+         */
+        public long size() {
+            return file.length();
+        }
+
+        /**
+         * Empties the log and starts a new one for the given snapshot
+         * generation and id counter.  Called when a stale log is found
+         * at startup.
+         */
+        public synchronized void reset(long newGeneration, long newNextId) throws IOException {
+            close();
+            new FileOutputStream(file, false).close();
+            generation = newGeneration;
+            nextId = newNextId;
+        }
+
+        private static long readGeneration(File file) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                return parseGeneration(reader.readLine());
+            }
+        }
+
+        public synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Coalesces durable writes.  Each caller asks for a given version
+     * of the data to be made durable.  If an earlier flush already
+     * covered that version the call returns straight away.  Otherwise
+     * the first caller becomes the leader: it waits for the commit
+     * window so that requests arriving in the meantime can share its
+     * flush, then flushes once on behalf of everyone waiting.  Callers
+     * arriving while a flush is running wait for it and only flush
+     * again if it did not cover their version.
+     */
+    private static class GroupCommit {
+        /**
+         * Writes the data out durably and returns the version that is
+         * now on disk.
+         */
+        interface Flush {
+            long run() throws IOException;
+        }
+
+        private final long windowMillis;
+        private final Flush flush;
+        private long durableVersion = -1;
+        private boolean flushing;
+
+        public GroupCommit(long windowMillis, Flush flush) {
+            this.windowMillis = windowMillis;
+            this.flush = flush;
+        }
+
+        /**
+         * Records that the given version is already durable, for
+         * example because it was just loaded from disk.
+         */
+        public synchronized void markDurable(long version) {
+            durableVersion = Math.max(durableVersion, version);
+        }
+
+        public synchronized boolean isDurable(long version) {
+            return durableVersion >= version;
+        }
+
+        public void commit(long version) throws IOException {
+            synchronized (this) {
+                while (durableVersion < version && flushing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for commit");
+                    }
+                }
+                if (durableVersion >= version) {
+                    return;
+                }
+                flushing = true;
+            }
+            try {
+                if (windowMillis > 0) {
+                    try {
+                        Thread.sleep(windowMillis);
+                    } catch (InterruptedException e) {
+                        // Flush right away instead of waiting out the window.
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                long covered = flush.run();
+                synchronized (this) {
+                    durableVersion = Math.max(durableVersion, covered);
+                }
+            } finally {
+                synchronized (this) {
+                    flushing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs saves on a dedicated persistence thread so that the menu
+     * never waits for the disk.  Save requests that arrive while an
+     * earlier request is still queued are folded into it: however many
+     * times the user saves in quick succession, only one write is
+     * queued at a time.  A request arriving while a save is already
+     * running queues exactly one more, so the latest changes are never
+     * missed.
+     */
+    private static class AsyncSaver {
+        private final ExecutorService executor;
+        private final Runnable save;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        public AsyncSaver(Runnable save) {
+            this.save = save;
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "task-saver");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Asks for a save without waiting for it.
+         */
+        public void request() {
+            if (pending.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    pending.set(false);
+                    save.run();
+                });
+            }
+        }
+
+        /**
+         * Waits until every save requested so far has finished.
+         */
+        public void flush() {
+            try {
+                executor.submit(() -> { }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // The marker task itself cannot fail.
+            }
+        }
+
+        public void close() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hand written parser for the tasks file.  The file is read in
+     * large blocks straight from a FileChannel and every line is
+     * scanned byte by byte: the pipe delimiters are located directly,
+     * dates in the yyyy‑MM‑dd form are decoded arithmetically into an
+     * epoch day and the priority and completion flag are decoded in
+     * place.  The description bytes are copied straight into the
+     * description pool of a TaskTable, so loading creates no objects
+     * per task at all.
+     *
+     * The parser accepts exactly the lines the original split based
+     * loader accepted, plus an optional fifth field holding the task's
+     * id and a sixth holding the date a completed task was completed
+     * on.  Lines without an id, or with one that is not a positive
+     * number, are loaded without one, and a completion date that does
+     * not parse is left unknown.  Unusual date or number spellings
+     * that the fast path does not recognise are handed to the standard
+     * parsers.
+     *
+     * Large files are split into chunks that start and end on line
+     * boundaries.  The chunks are parsed in parallel on the common
+     * ForkJoinPool into tables of their own, which are then appended to
+     * the result in file order.
+     */
+    private static class TaskParser {
+        private static final int BLOCK_SIZE = 1 << 20;
+        // Files smaller than this are parsed on the calling thread.
+        private static final long PARALLEL_THRESHOLD =
+                Long.getLong("todo.parallelLoadBytes", 8L * 1024 * 1024);
+        // Upper bound on the size of one parallel chunk.
+        private static final long MAX_CHUNK_SIZE = 32L * 1024 * 1024;
+        private static final int INVALID_DATE = Integer.MIN_VALUE;
+        private static final Charset CHARSET = Charset.defaultCharset();
+        private static final byte[] GENERATION_BYTES =
+                GENERATION_PREFIX.getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] NEXT_ID_BYTES =
+                NEXT_ID_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+        /**
+         * Receives the records found by the parser: the tasks are
+         * appended to a table and the generation and next id headers,
+         * if any, are remembered.
+         */
+        static final class ParsedTasks {
+            final TaskTable table;
+            boolean hasGeneration;
+            long generation;
+            // Id counter from the header, or 0 if there was none.
+            long nextId;
+
+            ParsedTasks(TaskTable table) {
+                this.table = table;
+            }
+        }
+
+        /**
+         * Parses every line of the channel, in parallel when the file is
+         * large enough to benefit from it.
+         */
+        static void parse(FileChannel channel, ParsedTasks out) throws IOException {
+            long size = channel.size();
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            if (size < PARALLEL_THRESHOLD || parallelism < 2) {
+                parse(channel, 0, size, out);
+                return;
+            }
+            int chunks = (int) Math.max(parallelism * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks, size));
+            }
+            ParsedTasks[] results = new ParsedTasks[chunks];
+            try {
+                ForkJoinPool.commonPool().invoke(new ChunkTask(channel, bounds, results, 0, chunks));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (ParsedTasks chunk : results) {
+                out.table.addAll(chunk.table);
+                if (chunk.hasGeneration) {
+                    out.hasGeneration = true;
+                    out.generation = chunk.generation;
+                }
+                out.nextId = Math.max(out.nextId, chunk.nextId);
+            }
+        }
+
+        /**
+         * Returns the offset of the first line that starts at or after
+         * the given position.
+         */
+        private static long nextLineStart(FileChannel channel, long position, long size)
+                throws IOException {
+            if (position == 0) {
+                return 0;
+            }
+            // Start one byte early so that a position just after a line
+            // break is itself a line start.
+            long offset = position - 1;
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            while (offset < size) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        return offset + i + 1;
+                    }
+                }
+                offset += read;
+            }
+            return size;
+        }
+
+        /**
+         * Parses every line in bytes [from, to) of the channel.  The
+         * range must start at the beginning of a line.  Uses positional
+         * reads, so several ranges of one channel can be parsed at the
+         * same time.
+         */
+        static void parse(FileChannel channel, long from, long to, ParsedTasks out) throws IOException {
+            byte[] block = new byte[(int) Math.min(BLOCK_SIZE, Math.max(to - from, 1))];
+            int filled = 0;
+            long position = from;
+            while (position < to) {
+                if (filled == block.length) {
+                    // A single line longer than the block; make room.
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                int wanted = (int) Math.min(block.length - filled, to - position);
+                int read = channel.read(ByteBuffer.wrap(block, filled, wanted), position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                int scanFrom = filled;
+                filled += read;
+                int start = 0;
+                for (int i = scanFrom; i < filled; i++) {
+                    if (block[i] == '\n') {
+                        parseLine(block, start, i, out);
+                        start = i + 1;
+                    }
+                }
+                filled -= start;
+                System.arraycopy(block, start, block, 0, filled);
+            }
+            if (filled > 0) {
+                parseLine(block, 0, filled, out);
+            }
+        }
+
+        /**
+         * Parses the line held in bytes [start, end) of the buffer, not
+         * including the line break.
+         */
+        static void parseLine(byte[] b, int start, int end, ParsedTasks out) {
+            if (end > start && b[end - 1] == '\r') {
+                end--;
+            }
+            if (isBlank(b, start, end)) {
+                return;
+            }
+            if (startsWith(b, start, end, GENERATION_BYTES)) {
+                out.hasGeneration = true;
+                out.generation = parseGeneration(new String(b, start, end - start, CHARSET));
+                return;
+            }
+            if (startsWith(b, start, end, NEXT_ID_BYTES)) {
+                out.nextId = parseHeader(new String(b, start, end - start, CHARSET), NEXT_ID_PREFIX);
+                return;
+            }
+            // String.split drops trailing empty fields, so trailing
+            // pipes do not count as delimiters.
+            while (end > start && b[end - 1] == '|') {
+                end--;
+            }
+            int first = -1;
+            int second = -1;
+            int third = -1;
+            int fourth = -1;
+            int fifth = -1;
+            for (int i = start; i < end; i++) {
+                if (b[i] != '|') {
+                    continue;
+                }
+                if (first < 0) {
+                    first = i;
+                } else if (second < 0) {
+                    second = i;
+                } else if (third < 0) {
+                    third = i;
+                } else if (fourth < 0) {
+                    fourth = i;
+                } else if (fifth < 0) {
+                    fifth = i;
+                } else {
+                    return; // More than six fields; skip it
+                }
+            }
+            if (third < 0) {
+                return; // Fewer than four fields; skip it
+            }
+            int epochDay = parseDate(b, first + 1, second);
+            if (epochDay == INVALID_DATE) {
+                return;
+            }
+            int priority = parsePriority(b, second + 1, third);
+            boolean completed = isTrue(b, third + 1, fourth < 0 ? end : fourth);
+            long id = fourth < 0 ? TaskTable.NO_ID : parseId(b, fourth + 1, fifth < 0 ? end : fifth);
+            int row = out.table.add(b, start, first - start, CHARSET, epochDay, priority, completed, id);
+            if (completed && fifth >= 0) {
+                int completedDay = parseDate(b, fifth + 1, end);
+                if (completedDay != INVALID_DATE) {
+                    out.table.setCompletedDay(row, completedDay);
+                }
+            }
+        }
+
+        /**
+         * Parses a contiguous run of chunks, splitting the run in half
+         * until a single chunk is left.
+         */
+        private static class ChunkTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final transient FileChannel channel;
+            private final long[] bounds;
+            private final ParsedTasks[] results;
+            private final int first;
+            private final int last;
+
+            ChunkTask(FileChannel channel, long[] bounds, ParsedTasks[] results, int first, int last) {
+                this.channel = channel;
+                this.bounds = bounds;
+                this.results = results;
+                this.first = first;
+                this.last = last;
+            }
+
+            @Override
+            protected void compute() {
+                if (last - first > 1) {
+                    int middle = (first + last) >>> 1;
+                    invokeAll(new ChunkTask(channel, bounds, results, first, middle),
+                            new ChunkTask(channel, bounds, results, middle, last));
+                    return;
+                }
+                ParsedTasks chunk = new ParsedTasks(new TaskTable());
+                try {
+                    parse(channel, bounds[first], bounds[first + 1], chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                results[first] = chunk;
+            }
+        }
+
+        private static boolean isBlank(byte[] b, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if ((b[i] & 0xff) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean startsWith(byte[] b, int start, int end, byte[] prefix) {
+            if (end - start < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (b[start + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decodes a yyyy‑MM‑dd date into an epoch day.  Like the
+         * formatter used elsewhere, a day past the end of the month is
+         * moved back to the last valid day.
+         */
+        private static int parseDate(byte[] b, int start, int end) {
+            if (end - start != 10 || b[start + 4] != '-' || b[start + 7] != '-') {
+                return parseDateSlowly(b, start, end);
+            }
+            int year = digits(b, start, start + 4);
+            int month = digits(b, start + 5, start + 7);
+            int day = digits(b, start + 8, start + 10);
+            if (year < 0 || month < 0 || day < 0) {
+                return parseDateSlowly(b, start, end);
+            }
+            if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+                return INVALID_DATE;
+            }
+            return epochDay(year, month, Math.min(day, lengthOfMonth(year, month)));
+        }
+
+        private static int parseDateSlowly(byte[] b, int start, int end) {
+            try {
+                String text = new String(b, start, end - start, CHARSET);
+                return (int) LocalDate.parse(text, DATE_FORMAT).toEpochDay();
+            } catch (DateTimeParseException e) {
+                return INVALID_DATE;
+            }
+        }
+
+        /**
+         * Returns the value of a run of ASCII digits, or -1 if any byte
+         * in the range is not a digit.
+         */
+        private static int digits(byte[] b, int start, int end) {
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = b[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        /**
+         * Decodes the priority field, falling back to the default
+         * priority of 1 when it is not a valid integer.
+         */
+        private static int parsePriority(byte[] b, int start, int end) {
+            int i = start;
+            boolean negative = false;
+            if (i < end && (b[i] == '-' || b[i] == '+')) {
+                negative = b[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return 1;
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = b[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return parsePrioritySlowly(b, start, end);
+                }
+                value = value * 10 + digit;
+                if (value > (long) Integer.MAX_VALUE + 1) {
+                    return 1;
+                }
+            }
+            value = negative ? -value : value;
+            return value > Integer.MAX_VALUE ? 1 : (int) value;
+        }
+
+        /**
+         * Decodes the id field, returning {@link TaskTable#NO_ID} unless
+         * it is a positive decimal number.
+         */
+        private static long parseId(byte[] b, int start, int end) {
+            if (start == end || end - start > 18) {
+                return TaskTable.NO_ID;
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = b[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return TaskTable.NO_ID;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private static int parsePrioritySlowly(byte[] b, int start, int end) {
+            try {
+                return Integer.parseInt(new String(b, start, end - start, CHARSET));
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+
+        /**
+         * Case insensitive comparison with "true", matching
+         * Boolean.parseBoolean.
+         */
+        private static boolean isTrue(byte[] b, int start, int end) {
+            return end - start == 4
+                    && (b[start] | 0x20) == 't'
+                    && (b[start + 1] | 0x20) == 'r'
+                    && (b[start + 2] | 0x20) == 'u'
+                    && (b[start + 3] | 0x20) == 'e';
+        }
+
+        private static int lengthOfMonth(int year, int month) {
+            switch (month) {
+                case 2:
+                    boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                    return leap ? 29 : 28;
+                case 4:
+                case 6:
+                case 9:
+                case 11:
+                    return 30;
+                default:
+                    return 31;
+            }
+        }
+
+        /**
+         * Converts a proleptic Gregorian date into the number of days
+         * since 1970‑01‑01, the same value LocalDate.toEpochDay returns.
+         */
+        static int epochDay(int year, int month, int day) {
+            int y = month <= 2 ? year - 1 : year;
+            int era = (y >= 0 ? y : y - 399) / 400;
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
+    }
+
+    /**
+     * Cold storage for old completed tasks.  Such tasks are moved out of
+     * the task list into a gzip compressed file, so they no longer take
+     * up memory or time when the list is sorted, shown or saved.  The
+     * file is never read at startup, only when the user asks for the
+     * task history.  Lines use the format of the tasks file,
+     * description|dueDate|priority|completed|id, followed by the date
+     * the task was completed on when it is known.
+     *
+     * Every batch of archived tasks is compressed as a gzip member of
+     * its own, and readers see consecutive members as one stream, so
+     * archiving never has to decompress what is already archived.  The
+     * existing bytes are copied to a temporary file, the new member is
+     * added and the result is moved over the archive, the same way the
+     * tasks file is written, so a crash never leaves a torn archive.  A
+     * crash after the move but before the tasks are removed from the
+     * list archives them twice, so readers skip repeated lines.  The id
+     * counter is saved with the tasks, so an archived task keeps its id
+     * to itself.
+     */
+    private static class TaskArchive {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private final Path path;
+
+        /**
+         * Archived tasks found by a history query.  They are kept in a
+         * table of their own without ids; the archived id of each row is
+         * kept alongside.
+         */
+        static final class FoundTasks {
+            final TaskTable table = new TaskTable();
+            long[] ids = new long[16];
+        }
+
+        public TaskArchive(String fileName) {
+            this.path = Paths.get(fileName);
+        }
+
+        public String location() {
+            return path.toString();
+        }
+
+        /**
+         * Appends the tasks in the given rows of the table to the
+         * archive and forces them to disk.
+         */
+        public void append(TaskTable tasks, int[] rows) throws IOException {
+            Path temp = Paths.get(path + ".tmp");
+            if (Files.exists(path)) {
+                Files.copy(path, temp, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(temp);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(
+                        Channels.newOutputStream(channel), BUFFER_SIZE);
+                BufferedWriter writer = new BufferedWriter(
+                        new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+                for (int row : rows) {
+                    writer.write(formatTask(tasks, row));
+                    writer.newLine();
+                }
+                writer.flush();
+                gzip.finish();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /**
+         * Reads the archive and returns the archived tasks whose
+         * descriptions contain every one of the given words, ignoring
+         * case.  The words must be in lower case.  With no words, every
+         * archived task is returned.
+         */
+        public FoundTasks find(String[] words) throws IOException {
+            FoundTasks found = new FoundTasks();
+            if (!Files.exists(path)) {
+                return found;
+            }
+            Set<String> seen = new HashSet<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (seen.add(line)) {
+                        add(found, line, words);
+                    }
+                }
+            }
+            return found;
+        }
+
+        private static void add(FoundTasks found, String line, String[] words) {
+            // The description may itself contain the separator, so the
+            // fields are taken from the end of the line.  Ids have no
+            // hyphen, so a last field with one is the completion date.
+            int end = line.length();
+            int completedDayField = -1;
+            int last = line.lastIndexOf('|');
+            if (last >= 0 && line.indexOf('-', last) >= 0) {
+                completedDayField = last;
+                end = last;
+            }
+            int idField = line.lastIndexOf('|', end - 1);
+            int completedField = line.lastIndexOf('|', idField - 1);
+            int priorityField = line.lastIndexOf('|', completedField - 1);
+            int dueDateField = line.lastIndexOf('|', priorityField - 1);
+            if (dueDateField < 0) {
+                return;
+            }
+            String description = line.substring(0, dueDateField);
+            String lowerCase = description.toLowerCase(Locale.ROOT);
+            for (String word : words) {
+                if (!lowerCase.contains(word)) {
+                    return;
+                }
+            }
+            try {
+                long id = Long.parseLong(line.substring(idField + 1, end));
+                LocalDate date = LocalDate.parse(
+                        line.substring(dueDateField + 1, priorityField), DATE_FORMAT);
+                int priority = Integer.parseInt(line.substring(priorityField + 1, completedField));
+                boolean done = Boolean.parseBoolean(line.substring(completedField + 1, idField));
+                int completedDay = completedDayField < 0 ? TaskTable.NO_DAY : (int) LocalDate.parse(
+                        line.substring(completedDayField + 1), DATE_FORMAT).toEpochDay();
+                int row = found.table.add(description, (int) date.toEpochDay(), priority, done,
+                        TaskTable.NO_ID);
+                found.table.setCompletedDay(row, completedDay);
+                if (row == found.ids.length) {
+                    found.ids = Arrays.copyOf(found.ids, row * 2);
+                }
+                found.ids[row] = id;
+            } catch (DateTimeParseException | NumberFormatException e) {
+                // Skip malformed lines.
+            }
+        }
+    }
+
+    /**
+     * Alternative storage engine for the task list.  The default
+     * pipe‑separated tasks file together with its change log is built
+     * into the manager itself; a TaskStore replaces both when one is
+     * selected with the todo.store system property.  The manager tells
+     * the store about every change as it happens and asks it to make
+     * everything durable when the user saves.
+     */
+    private interface TaskStore {
+        /**
+         * Replaces the contents of the table with the stored tasks.
+         */
+        void load(TaskTable tasks) throws IOException;
+
+        /**
+         * Called after a task has been appended to the end of the table.
+         */
+        void taskAdded(TaskTable tasks, int index) throws IOException;
+
+        /**
+         * Called after the task at the given index was marked completed.
+         */
+        void taskCompleted(TaskTable tasks, int index) throws IOException;
+
+        /**
+         * Called after the task at the given index was removed.  The row
+         * stays in the table as a tombstone until the table is
+         * compacted.
+         */
+        void taskRemoved(int index) throws IOException;
+
+        /**
+         * Called just before the table is compacted: every removed row
+         * is dropped and the remaining rows move down, keeping their
+         * order.
+         */
+        void compacting(TaskTable tasks) throws IOException;
+
+        /**
+         * Makes the current contents of the table durable.  Called with
+         * the lock held, this only collects what has to be written and
+         * returns the action that writes it, which is run after the lock
+         * is released and must not look at the table.  Saves do not
+         * overlap.  If the action fails, the next save writes everything
+         * it would have written again.
+         */
+        PersistAction save(TaskTable tasks) throws IOException;
+
+        /**
+         * Returns the name of the file the tasks are stored in, for use
+         * in messages to the user.
+         */
+        String location();
+
+        void close() throws IOException;
+    }
+
+    /**
+     * Binary task store backed by memory‑mapped files.  Every task is a
+     * fixed width record in tasks.bin holding its priority, due date as
+     * an epoch day, completion flag and day, id and the offset and
+     * length of its description, which lives in the separate tasks.heap
+     * file.  Loading maps the record file instead of parsing text,
+     * marking a task as completed writes its record in place, and adding
+     * a task writes one record and appends its description, so every
+     * change is persisted in time independent of the size of the list.
+     *
+     * The record file starts with a small header holding a magic
+     * number, the format version, the number of records, the generation
+     * of the heap file and the id the next new task will be given.  The
+     * count is only bumped after a new record has been written, so a
+     * crash during an append leaves the previous list intact.  Removing
+     * a task sets a flag in its record, and when the table is compacted
+     * the remaining records are moved down in the same way as its rows.
+     * Should the program die halfway through that, some records are
+     * left twice in the file; the second copy is dropped on the next
+     * load.
+     *
+     * Descriptions of removed tasks stay in the heap until it is
+     * compacted on save.  The live descriptions are then copied, back
+     * to back in record order, into a heap of the next generation
+     * (tasks.heap.1, tasks.heap.2 and so on).  Only once that file is on
+     * disk does the header name it as the heap being moved to; the
+     * record offsets are then rewritten, the header switched over and
+     * the old heap deleted.  Since the new offsets follow from the
+     * description lengths alone, a load that finds a move under way
+     * simply finishes it, and a load that finds none deletes any newer
+     * heap left half written.
+     */
+    private static class MappedTaskStore implements TaskStore {
+        private static final int MAGIC = 0x54444231; // "TDB1"
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 32;
+        private static final int COUNT_OFFSET = 8;
+        private static final int HEAP_GENERATION_OFFSET = 12;
+        private static final int NEXT_ID_OFFSET = 16;
+        // Generation of the heap the records are being moved to; equal
+        // to the heap generation when no move is under way.
+        private static final int NEW_HEAP_GENERATION_OFFSET = 24;
+        private static final int RECORD_SIZE = 40;
+        private static final int PRIORITY = 0;
+        private static final int EPOCH_DAY = 4;
+        private static final int COMPLETED = 8;
+        private static final int REMOVED = 9;
+        private static final int DESCRIPTION_OFFSET = 12;
+        private static final int DESCRIPTION_LENGTH = 20;
+        private static final int ID = 24;
+        private static final int COMPLETED_DAY = 32;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Path recordPath;
+        private final String heapFileName;
+        private Path heapPath;
+        private int heapGeneration;
+        private FileChannel recordChannel;
+        private FileChannel heapChannel;
+        private MappedByteBuffer records;
+        private int count;
+        private long heapSize;
+        // Bytes of the heap still referenced by a record.
+        private long liveHeapBytes;
+
+        public MappedTaskStore(String recordFileName, String heapFileName) {
+            this.recordPath = Paths.get(recordFileName);
+            this.heapFileName = heapFileName;
+        }
+
+        @Override
+        public void load(TaskTable tasks) throws IOException {
+            recordChannel = FileChannel.open(recordPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (recordChannel.size() < HEADER_SIZE) {
+                map(INITIAL_CAPACITY);
+                records.putInt(0, MAGIC);
+                records.putInt(4, VERSION);
+                records.putInt(COUNT_OFFSET, 0);
+                records.putInt(HEAP_GENERATION_OFFSET, 0);
+                records.putLong(NEXT_ID_OFFSET, 1);
+                records.putInt(NEW_HEAP_GENERATION_OFFSET, 0);
+            } else {
+                map((int) ((recordChannel.size() - HEADER_SIZE) / RECORD_SIZE));
+                if (records.getInt(0) != MAGIC || records.getInt(4) != VERSION) {
+                    throw new IOException(recordPath + " is not a task record file");
+                }
+            }
+            count = records.getInt(COUNT_OFFSET);
+            if (count < 0 || count > capacity()) {
+                throw new IOException(recordPath + " is damaged: it claims " + count + " records");
+            }
+            heapGeneration = records.getInt(HEAP_GENERATION_OFFSET);
+            int newHeapGeneration = records.getInt(NEW_HEAP_GENERATION_OFFSET);
+            if (newHeapGeneration != heapGeneration) {
+                // A heap compaction stopped after the new heap was
+                // written in full; finish moving the records to it.
+                switchHeap(newHeapGeneration);
+            } else {
+                Files.deleteIfExists(heapPath(heapGeneration + 1));
+            }
+            heapPath = heapPath(heapGeneration);
+            heapChannel = FileChannel.open(heapPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            heapSize = heapChannel.size();
+            tasks.clear();
+            tasks.reserveIds(records.getLong(NEXT_ID_OFFSET));
+            if (count == 0) {
+                return;
+            }
+            if (heapSize > Integer.MAX_VALUE) {
+                throw new IOException(heapPath + " is too large to map");
+            }
+            MappedByteBuffer heap = heapChannel.map(FileChannel.MapMode.READ_ONLY, 0, heapSize);
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                long offset = records.getLong(base + DESCRIPTION_OFFSET);
+                int length = records.getInt(base + DESCRIPTION_LENGTH);
+                if (offset < 0 || length < 0 || offset + length > heapSize) {
+                    throw new IOException("Task record " + i + " in " + recordPath
+                            + " points past the end of " + heapPath);
+                }
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                at(heap, (int) offset).get(scratch, 0, length);
+                long id = records.getLong(base + ID);
+                int row = tasks.add(scratch, 0, length, records.getInt(base + EPOCH_DAY),
+                        records.getInt(base + PRIORITY), records.get(base + COMPLETED) != 0, id);
+                tasks.setCompletedDay(row, records.getInt(base + COMPLETED_DAY));
+                tasks.markClean(row);
+                // Keep removed and duplicated records as tombstones so
+                // that rows keep matching records until the table is
+                // compacted.
+                if (records.get(base + REMOVED) != 0 || (id != TaskTable.NO_ID && tasks.id(row) != id)) {
+                    tasks.remove(row);
+                } else {
+                    liveHeapBytes += length;
+                }
+            }
+            // Every record is written with its id, so only a damaged
+            // file can leave a task without one.
+            if (tasks.assignMissingIds() > 0) {
+                for (int row = 0; row < count; row++) {
+                    records.putLong(HEADER_SIZE + row * RECORD_SIZE + ID, tasks.id(row));
+                    tasks.markClean(row);
+                }
+            }
+            records.putLong(NEXT_ID_OFFSET, tasks.nextId());
+        }
+
+        @Override
+        public void taskAdded(TaskTable tasks, int index) throws IOException {
+            ByteBuffer description = tasks.descriptionBytes(index);
+            int length = description.remaining();
+            long offset = heapSize;
+            while (description.hasRemaining()) {
+                heapChannel.write(description, offset + description.position());
+            }
+            heapSize += length;
+            liveHeapBytes += length;
+            if (index >= capacity()) {
+                map(Math.max(INITIAL_CAPACITY, capacity() * 2));
+            }
+            int base = HEADER_SIZE + index * RECORD_SIZE;
+            records.putInt(base + PRIORITY, tasks.priority(index));
+            records.putInt(base + EPOCH_DAY, tasks.epochDay(index));
+            records.put(base + COMPLETED, (byte) (tasks.isCompleted(index) ? 1 : 0));
+            records.put(base + REMOVED, (byte) 0);
+            records.putLong(base + DESCRIPTION_OFFSET, offset);
+            records.putInt(base + DESCRIPTION_LENGTH, length);
+            records.putLong(base + ID, tasks.id(index));
+            records.putInt(base + COMPLETED_DAY, tasks.completedDay(index));
+            count = index + 1;
+            records.putInt(COUNT_OFFSET, count);
+            records.putLong(NEXT_ID_OFFSET, tasks.nextId());
+        }
+
+        @Override
+        public void taskCompleted(TaskTable tasks, int index) {
+            int base = HEADER_SIZE + index * RECORD_SIZE;
+            records.putInt(base + COMPLETED_DAY, tasks.completedDay(index));
+            records.put(base + COMPLETED, (byte) 1);
+        }
+
+        @Override
+        public void taskRemoved(int index) {
+            int base = HEADER_SIZE + index * RECORD_SIZE;
+            liveHeapBytes -= records.getInt(base + DESCRIPTION_LENGTH);
+            records.put(base + REMOVED, (byte) 1);
+        }
+
+        /**
+         * Moves the records of the rows that were not removed down over
+         * the removed ones, front to back, and only then lowers the
+         * record count.
+         */
+        @Override
+        public void compacting(TaskTable tasks) {
+            byte[] record = new byte[RECORD_SIZE];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (tasks.isRemoved(i)) {
+                    continue;
+                }
+                if (kept != i) {
+                    at(records, HEADER_SIZE + i * RECORD_SIZE).get(record);
+                    at(records, HEADER_SIZE + kept * RECORD_SIZE).put(record);
+                }
+                kept++;
+            }
+            count = kept;
+            records.putInt(COUNT_OFFSET, count);
+        }
+
+        /**
+         * Forces both files to disk.  Every change has already been
+         * written in place, so that is all the returned action does.
+         * When more than half of the heap is taken up by descriptions of
+         * removed tasks it is rewritten first, while the lock is still
+         * held, since changes made meanwhile would move the records
+         * pointing into it.
+         */
+        @Override
+        public PersistAction save(TaskTable tasks) throws IOException {
+            if (heapSize > 2 * liveHeapBytes + INITIAL_CAPACITY) {
+                compactHeap();
+            }
+            FileChannel heap = heapChannel;
+            MappedByteBuffer mapped = records;
+            return () -> {
+                heap.force(true);
+                mapped.force();
+            };
+        }
+
+        /**
+         * Copies the descriptions of all records into a heap of the next
+         * generation and moves the records over to it.  The new heap is
+         * forced to disk and named in the header before any record is
+         * changed, so that a crash at any point either leaves the old
+         * heap in use or a move the next load can finish.
+         */
+        private void compactHeap() throws IOException {
+            int generation = heapGeneration + 1;
+            Path newHeapPath = heapPath(generation);
+            long written = 0;
+            try (FileChannel out = FileChannel.open(newHeapPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < count; i++) {
+                    int base = HEADER_SIZE + i * RECORD_SIZE;
+                    long offset = records.getLong(base + DESCRIPTION_OFFSET);
+                    int length = records.getInt(base + DESCRIPTION_LENGTH);
+                    ByteBuffer description = ByteBuffer.allocate(length);
+                    while (description.hasRemaining()) {
+                        if (heapChannel.read(description, offset + description.position()) < 0) {
+                            throw new IOException("Unexpected end of " + heapPath);
+                        }
+                    }
+                    description.flip();
+                    while (description.hasRemaining()) {
+                        written += out.write(description, written);
+                    }
+                }
+                out.force(true);
+            }
+            records.putInt(NEW_HEAP_GENERATION_OFFSET, generation);
+            records.force();
+            heapChannel.close();
+            switchHeap(generation);
+            heapPath = newHeapPath;
+            heapChannel = FileChannel.open(heapPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            heapSize = written;
+            liveHeapBytes = written;
+        }
+
+        /**
+         * Points every record into the heap of the given generation,
+         * which holds the descriptions back to back in record order,
+         * makes it the current heap and deletes the previous one.
+         */
+        private void switchHeap(int generation) throws IOException {
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                records.putLong(base + DESCRIPTION_OFFSET, offset);
+                offset += records.getInt(base + DESCRIPTION_LENGTH);
+            }
+            records.putInt(HEAP_GENERATION_OFFSET, generation);
+            records.force();
+            Files.deleteIfExists(heapPath(heapGeneration));
+            heapGeneration = generation;
+        }
+
+        /**
+         * Returns the heap file of the given generation.  The first heap
+         * keeps the plain name.
+         */
+        private Path heapPath(int generation) {
+            return Paths.get(generation == 0 ? heapFileName : heapFileName + "." + generation);
+        }
+
+        @Override
+        public String location() {
+            return recordPath.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (records != null) {
+                records.force();
+            }
+            if (heapChannel != null) {
+                heapChannel.close();
+            }
+            if (recordChannel != null) {
+                recordChannel.close();
+            }
+        }
+
+        private int capacity() {
+            return (records.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        }
+
+        /**
+         * Maps the record file with room for the given number of records,
+         * growing the file if necessary.
+         */
+        private void map(int capacity) throws IOException {
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(recordPath + " cannot hold more than "
+                        + capacity() + " tasks");
+            }
+            records = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * Returns a view of the buffer positioned at the given byte, for
+         * copying whole byte arrays in and out.  Java 8 only has the
+         * relative bulk get and put, and moving the position of the
+         * shared buffer itself would disturb its other users.
+         */
+        private static ByteBuffer at(ByteBuffer buffer, int position) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            return view;
+        }
+    }
+
+    /**
+     * Columnar task store.  Instead of one line per task, tasks.col
+     * holds one packed column per field: all priorities, then all due
+     * dates as epoch days, then the ids, then the completion flags as a
+     * bitset, then the completion days, then the description lengths
+     * followed by the descriptions themselves as one UTF‑8 blob.  The
+     * header holds the number of tasks and the id the next new task
+     * will be given.  The layout matches the in‑memory TaskTable, so
+     * saving and loading copy whole columns rather than converting task
+     * by task.  Loading still reads every column, descriptions
+     * included, since the whole list is kept in memory.
+     *
+     * The file is rewritten as a whole on save through a temporary
+     * file, in the same crash‑safe way as the text snapshot.
+     */
+    private static class ColumnarTaskStore implements TaskStore {
+        private static final int MAGIC = 0x54444331; // "TDC1"
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 24;
+
+        private final Path path;
+
+        public ColumnarTaskStore(String fileName) {
+            this.path = Paths.get(fileName);
+        }
+
+        @Override
+        public void load(TaskTable tasks) throws IOException {
+            tasks.clear();
+            if (!Files.exists(path)) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException(path + " is not a columnar task file");
+                }
+                int count = header.getInt();
+                header.getInt();
+                tasks.reserveIds(header.getLong());
+                long position = HEADER_SIZE;
+                int[] priorities = readInts(channel, position, count);
+                position += 4L * count;
+                int[] epochDays = readInts(channel, position, count);
+                position += 4L * count;
+                long[] ids = new long[count];
+                readFully(channel, position, 8 * count).asLongBuffer().get(ids);
+                position += 8L * count;
+                int words = (count + 63) / 64;
+                long[] bits = new long[words];
+                readFully(channel, position, 8 * words).asLongBuffer().get(bits);
+                BitSet completed = BitSet.valueOf(bits);
+                position += 8L * words;
+                int[] completedDays = readInts(channel, position, count);
+                position += 4L * count;
+                int[] lengths = readInts(channel, position, count);
+                position += 4L * count;
+                byte[] scratch = new byte[256];
+                ByteBuffer blob = ByteBuffer.allocate(1 << 20);
+                blob.limit(0);
+                for (int i = 0; i < count; i++) {
+                    int length = lengths[i];
+                    if (length > scratch.length) {
+                        scratch = new byte[Math.max(length, scratch.length * 2)];
+                    }
+                    int copied = 0;
+                    while (copied < length) {
+                        if (!blob.hasRemaining()) {
+                            blob.clear();
+                            int read = channel.read(blob, position);
+                            if (read < 0) {
+                                throw new IOException("Unexpected end of " + path);
+                            }
+                            position += read;
+                            blob.flip();
+                        }
+                        int chunk = Math.min(blob.remaining(), length - copied);
+                        blob.get(scratch, copied, chunk);
+                        copied += chunk;
+                    }
+                    int row = tasks.add(scratch, 0, length, epochDays[i], priorities[i], completed.get(i),
+                            ids[i]);
+                    tasks.setCompletedDay(row, completedDays[i]);
+                    tasks.markClean(row);
+                }
+            }
+        }
+
+        @Override
+        public void taskAdded(TaskTable tasks, int index) {
+            // Everything is written on save.
+        }
+
+        @Override
+        public void taskCompleted(TaskTable tasks, int index) {
+            // Everything is written on save.
+        }
+
+        @Override
+        public void taskRemoved(int index) {
+            // Everything is written on save.
+        }
+
+        @Override
+        public void compacting(TaskTable tasks) {
+            // Everything is written on save.
+        }
+
+        /**
+         * Copies the table, which also leaves out removed rows, and
+         * returns the action that writes the copy.
+         */
+        @Override
+        public PersistAction save(TaskTable tasks) {
+            TaskTable copy = tasks.copy();
+            return () -> {
+                try {
+                    write(copy);
+                } finally {
+                    copy.discard();
+                }
+            };
+        }
+
+        private void write(TaskTable tasks) throws IOException {
+            int size = tasks.size();
+            Path temp = Paths.get(path + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).putLong(tasks.nextId());
+                for (int i = 0; i < size; i++) {
+                    buffer = ensure(channel, buffer, 4).putInt(tasks.priority(i));
+                }
+                for (int i = 0; i < size; i++) {
+                    buffer = ensure(channel, buffer, 4).putInt(tasks.epochDay(i));
+                }
+                for (int i = 0; i < size; i++) {
+                    buffer = ensure(channel, buffer, 8).putLong(tasks.id(i));
+                }
+                long[] bits = tasks.completedRows().toLongArray();
+                int words = (size + 63) / 64;
+                for (int i = 0; i < words; i++) {
+                    buffer = ensure(channel, buffer, 8).putLong(i < bits.length ? bits[i] : 0L);
+                }
+                for (int i = 0; i < size; i++) {
+                    buffer = ensure(channel, buffer, 4).putInt(tasks.completedDay(i));
+                }
+                for (int i = 0; i < size; i++) {
+                    buffer = ensure(channel, buffer, 4).putInt(tasks.descriptionLength(i));
+                }
+                for (int i = 0; i < size; i++) {
+                    ByteBuffer description = tasks.descriptionBytes(i);
+                    while (description.hasRemaining()) {
+                        buffer = ensure(channel, buffer, 1);
+                        int chunk = Math.min(buffer.remaining(), description.remaining());
+                        ByteBuffer slice = description.duplicate();
+                        slice.limit(slice.position() + chunk);
+                        buffer.put(slice);
+                        description.position(description.position() + chunk);
+                    }
+                }
+                drain(channel, buffer);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public String location() {
+            return path.toString();
+        }
+
+        @Override
+        public void close() {
+            // Nothing is held open between saves.
+        }
+
+        /**
+         * Writes out the buffer if it has fewer than the given number of
+         * bytes left and returns it ready for more data.
+         */
+        private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes)
+                throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain(channel, buffer);
+            }
+            return buffer;
+        }
+
+        private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private static ByteBuffer readFully(FileChannel channel, long position, int length)
+                throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of task file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private static int[] readInts(FileChannel channel, long position, int count)
+                throws IOException {
+            int[] values = new int[count];
+            readFully(channel, position, 4 * count).asIntBuffer().get(values);
+            return values;
+        }
+    }
+
+    /**
+     * Segmented text store.  The task list is split into segments of up
+     * to a few thousand tasks, each kept in its own file in the
+     * tasks.seg directory using the usual pipe‑separated line format.
+     * A manifest lists the segment files in order.  On save only the
+     * segments that contain a dirty task, or in which a task was added
+     * or removed, are rewritten; a save after a single change therefore
+     * writes at most two small files no matter how long the list is.
+     *
+     * Each segment file and the manifest are replaced atomically.  The
+     * manifest only records which files make up the list, not how many
+     * tasks each holds, so it needs rewriting only when segments are
+     * created or dropped.  It also holds the task id counter, which is
+     * brought up to date whenever tasks were removed since the last
+     * save: as long as no task is removed, the highest id in the
+     * segments already tells it.
      */
-    private static class Task {
-        private String description;
-        private LocalDate dueDate;
-        private int priority;
-        private boolean completed;
+    private static class SegmentedTaskStore implements TaskStore {
+        private static final int SEGMENT_TASKS = 4096;
+        private static final String MANIFEST = "manifest";
 
-        public Task(String description, LocalDate dueDate, int priority) {
-            this.description = description;
-            this.dueDate = dueDate;
-            this.priority = priority;
-            this.completed = false;
+        private final Path directory;
+        // Per segment: file id, number of tasks, and whether a task was
+        // added to or removed from it since the last save.
+        private final List<long[]> segments = new ArrayList<>();
+        private long nextId;
+        private boolean manifestChanged;
+        // Task id counter last written to the manifest, and whether a
+        // task was removed since the last save.
+        private long taskIds;
+        private boolean removedTasks;
+        // Set when the writes of a save failed, so that the next save
+        // rewrites every segment and the manifest.
+        private volatile boolean saveFailed;
+
+        private static final int ID = 0;
+        private static final int COUNT = 1;
+        private static final int STRUCTURE_CHANGED = 2;
+
+        public SegmentedTaskStore(String directoryName) {
+            this.directory = Paths.get(directoryName);
         }
 
-        public String getDescription() {
-            return description;
+        @Override
+        public void load(TaskTable tasks) throws IOException {
+            tasks.clear();
+            segments.clear();
+            Path manifest = directory.resolve(MANIFEST);
+            if (!Files.exists(manifest)) {
+                return;
+            }
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.startsWith("next=")) {
+                    nextId = Long.parseLong(line.substring(5));
+                } else if (line.startsWith("ids=")) {
+                    taskIds = Long.parseLong(line.substring(4));
+                    tasks.reserveIds(taskIds);
+                } else if (!line.isEmpty()) {
+                    long id = Long.parseLong(line);
+                    int before = tasks.size();
+                    Path segment = segmentPath(id);
+                    if (Files.exists(segment)) {
+                        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                            TaskParser.parse(channel, 0, channel.size(), new TaskParser.ParsedTasks(tasks));
+                        }
+                        for (int row = before; row < tasks.size(); row++) {
+                            tasks.markClean(row);
+                        }
+                    }
+                    segments.add(new long[] {id, tasks.size() - before, 0});
+                }
+            }
         }
 
-        public LocalDate getDueDate() {
-            return dueDate;
+        @Override
+        public void taskAdded(TaskTable tasks, int index) {
+            long[] last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last == null || last[COUNT] >= SEGMENT_TASKS) {
+                last = new long[] {nextId++, 0, 0};
+                segments.add(last);
+                manifestChanged = true;
+            }
+            last[COUNT]++;
+            last[STRUCTURE_CHANGED] = 1;
         }
 
-        public int getPriority() {
-            return priority;
+        @Override
+        public void taskCompleted(TaskTable tasks, int index) {
+            // The table marks the row dirty; nothing else to track.
         }
 
-        public boolean isCompleted() {
-            return completed;
+        /**
+         * The removed row stays in the table, and is still counted by
+         * its segment, until the table is compacted.  Its segment is
+         * rewritten without it on the next save.
+         */
+        @Override
+        public void taskRemoved(int index) {
+            removedTasks = true;
+            int start = 0;
+            for (long[] segment : segments) {
+                if (index < start + segment[COUNT]) {
+                    segment[STRUCTURE_CHANGED] = 1;
+                    return;
+                }
+                start += segment[COUNT];
+            }
         }
 
-        public void setCompleted(boolean completed) {
-            this.completed = completed;
+        /**
+         * Recounts the rows of every segment that will remain once the
+         * removed rows are dropped.
+         */
+        @Override
+        public void compacting(TaskTable tasks) {
+            int start = 0;
+            for (long[] segment : segments) {
+                int end = start + (int) segment[COUNT];
+                for (int row = start; row < end; row++) {
+                    if (tasks.isRemoved(row)) {
+                        segment[COUNT]--;
+                    }
+                }
+                start = end;
+            }
         }
 
+        /**
+         * Formats the changed segments, and the manifest if it changed,
+         * and returns the action that writes them and deletes the files
+         * of emptied segments.
+         */
         @Override
-        public String toString() {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy‑MM‑dd");
-            String status = completed ? "Completed" : "Pending";
-            return String.format(
-                    "Description: %s\nDue Date: %s\nPriority: %d\nStatus: %s",
-                    description,
-                    dueDate.format(formatter),
-                    priority,
-                    status);
+        public PersistAction save(TaskTable tasks) {
+            if (saveFailed) {
+                saveFailed = false;
+                for (long[] segment : segments) {
+                    segment[STRUCTURE_CHANGED] = 1;
+                }
+                manifestChanged = true;
+            }
+            final List<Path> emptied = new ArrayList<>();
+            final List<Path> paths = new ArrayList<>();
+            final List<String> texts = new ArrayList<>();
+            int start = 0;
+            for (int s = 0; s < segments.size(); s++) {
+                long[] segment = segments.get(s);
+                int end = start + (int) segment[COUNT];
+                if (segment[COUNT] == 0) {
+                    emptied.add(segmentPath(segment[ID]));
+                    segments.remove(s--);
+                    manifestChanged = true;
+                    continue;
+                }
+                boolean changed = segment[STRUCTURE_CHANGED] != 0;
+                for (int i = start; i < end && !changed; i++) {
+                    changed = tasks.isDirty(i);
+                }
+                if (changed) {
+                    paths.add(segmentPath(segment[ID]));
+                    texts.add(formatSegment(tasks, start, end));
+                    segment[STRUCTURE_CHANGED] = 0;
+                }
+                start = end;
+            }
+            if (removedTasks && tasks.nextId() > taskIds) {
+                manifestChanged = true;
+            }
+            final String manifest;
+            if (manifestChanged) {
+                taskIds = tasks.nextId();
+                manifest = formatManifest();
+                manifestChanged = false;
+            } else {
+                manifest = null;
+            }
+            removedTasks = false;
+            return () -> {
+                try {
+                    Files.createDirectories(directory);
+                    for (Path path : emptied) {
+                        Files.deleteIfExists(path);
+                    }
+                    for (int i = 0; i < paths.size(); i++) {
+                        writeAtomically(paths.get(i), texts.get(i));
+                    }
+                    if (manifest != null) {
+                        writeAtomically(directory.resolve(MANIFEST), manifest);
+                    }
+                } catch (IOException e) {
+                    saveFailed = true;
+                    throw e;
+                }
+            };
+        }
+
+        /**
+         * Formats the tasks in rows [start, end) as the text of a
+         * segment file and marks the rows clean.
+         */
+        private static String formatSegment(TaskTable tasks, int start, int end) {
+            StringBuilder text = new StringBuilder();
+            for (int row = start; row < end; row++) {
+                if (!tasks.isRemoved(row)) {
+                    text.append(formatTask(tasks, row)).append('\n');
+                }
+                tasks.markClean(row);
+            }
+            return text.toString();
+        }
+
+        private String formatManifest() {
+            StringBuilder text = new StringBuilder("next=").append(nextId).append('\n')
+                    .append("ids=").append(taskIds).append('\n');
+            for (long[] segment : segments) {
+                text.append(segment[ID]).append('\n');
+            }
+            return text.toString();
+        }
+
+        private static void writeAtomically(Path target, String text) throws IOException {
+            Path temp = Paths.get(target + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(TaskParser.CHARSET));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        private Path segmentPath(long id) {
+            return directory.resolve(String.format("seg-%08d.txt", id));
+        }
+
+        @Override
+        public String location() {
+            return directory.toString();
+        }
+
+        @Override
+        public void close() {
+            // Nothing is held open between saves.
         }
     }
 
-    // List to store the tasks in memory
-    private List<Task> tasks;
+    // Table storing the tasks in memory
+    private TaskTable tasks;
     // Scanner to read user input from standard input
     private Scanner scanner;
     // Formatter used to parse and format dates in a consistent way.
@@ -91,6 +5684,92 @@ public class ToDoListManager {
     // with pipe‑separated values keeps the storage simple and human
     // readable.
     private static final String FILE_NAME = "tasks.txt";
+    // Number of descriptions suggested when adding a task.
+    private static final int SUGGESTION_COUNT = 5;
+    // Most tasks listed by a fuzzy search.
+    private static final int FUZZY_RESULT_COUNT = 10;
+    // Number of tasks listed by "next" when no number is given.
+    private static final int NEXT_TASK_COUNT = 10;
+    // Name of the append‑only change log written in journal mode.
+    private static final String LOG_FILE_NAME = "tasks.log";
+    // Journal mode is on by default; run with -Dtodo.journal=false to
+    // fall back to rewriting the whole file on every save.
+    private static final boolean JOURNAL_ENABLED =
+            Boolean.parseBoolean(System.getProperty("todo.journal", "true"));
+    // Change log used in journal mode, or null when journaling is off.
+    private TaskJournal journal;
+    // Storage engine selected with -Dtodo.store: "text" (the default)
+    // keeps the pipe‑separated file and change log, "mapped" uses the
+    // memory‑mapped binary store, "columnar" the column‑per‑field file and
+    // "segmented" the directory of separately saved segments.
+    private static final String STORE_TYPE = System.getProperty("todo.store", "text");
+    // Alternative storage engine, or null when the text file is used.
+    private TaskStore store;
+    // How tasks with the same description and due date as another task
+    // are treated, when added and when loaded: "off" (the default)
+    // allows them, "warn" points them out and "reject" keeps them out
+    // of the list.
+    private static final String DUPLICATE_MODE = System.getProperty("todo.duplicates", "off");
+    // Compressed file that old completed tasks are moved to.
+    private static final String ARCHIVE_FILE_NAME = "tasks.archive.gz";
+    // Completed tasks finished at least this many days ago are archived
+    // at startup when set, for example with -Dtodo.archiveDays=30.  It is
+    // "off" by default, leaving archiving to the menu.
+    private static final String ARCHIVE_AFTER_DAYS = System.getProperty("todo.archiveDays", "off");
+    private final TaskArchive archive = new TaskArchive(ARCHIVE_FILE_NAME);
+    // Size of the buffer the tasks file is written through, and the
+    // most room the fields after the description can take in a line.
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS_LENGTH = 64;
+    private static final byte[] TRUE_BYTES = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE_BYTES = "false".getBytes(StandardCharsets.US_ASCII);
+    // Header line marking the snapshot generation in the tasks file and
+    // in the change log.  It changed the file format: versions before it
+    // do not know the header lines, and as task lines have also gained
+    // an id and a completion date, they skip every line of a tasks file
+    // written by this version and load an empty list.  Files written by
+    // older versions still load here.
+    private static final String GENERATION_PREFIX = "#gen=";
+    // Header line holding the id the next new task will be given, so
+    // that the ids of removed tasks are not handed out again.
+    private static final String NEXT_ID_PREFIX = "#next=";
+    // Thresholds at which the background compactor folds the change log
+    // into a new snapshot: either the log has grown past the given size
+    // or replaying it at startup took longer than the given time.
+    private static final long COMPACT_LOG_BYTES =
+            Long.getLong("todo.compactBytes", 4L * 1024 * 1024);
+    private static final long COMPACT_REPLAY_MILLIS =
+            Long.getLong("todo.compactReplayMillis", 250L);
+    private static final long COMPACT_CHECK_SECONDS = 10;
+    // Length of the group commit window.  Saves and log syncs requested
+    // within this many milliseconds of each other share one fsync; set
+    // to 0 to sync every request immediately.
+    private static final long GROUP_COMMIT_MILLIS =
+            Long.getLong("todo.groupCommitMillis", 20L);
+    // Generation of the snapshot currently on disk.
+    private long snapshotGeneration;
+    // Time taken to replay the change log at startup, in milliseconds.
+    private volatile long lastReplayMillis;
+    // Background thread that compacts and syncs the change log, if
+    // journaling is on.
+    private ScheduledExecutorService compactor;
+    // Guards the task list and the journal against concurrent compaction.
+    private final Object lock = new Object();
+    // Number of changes made to the task list, guarded by lock.  Used as
+    // the version number for group commits of full saves.
+    private long changeCount;
+    // Value of changeCount when the storage engine last saved, guarded
+    // by lock.  Saves are skipped while the two are equal.
+    private long savedChangeCount;
+    // Held for the whole of a save by the storage engine, whose writes
+    // happen outside lock, so that two saves never overlap.
+    private final Object storeSaveLock = new Object();
+    // Group commits for full snapshot saves and for change log syncs.
+    private final GroupCommit snapshotCommit =
+            new GroupCommit(GROUP_COMMIT_MILLIS, this::flushSnapshot);
+    private GroupCommit journalCommit;
+    // Performs the saves requested from the menu in the background.
+    private final AsyncSaver saver = new AsyncSaver(() -> saveTasks(false));
 
     /**
      * Constructs a new to‑do list manager.  This constructor
@@ -101,9 +5780,30 @@ public class ToDoListManager {
      * an empty list.
      */
     public ToDoListManager() {
-        tasks = new ArrayList<>();
+        tasks = new TaskTable();
         scanner = new Scanner(System.in);
+        store = createStore();
+        journal = JOURNAL_ENABLED && store == null ? new TaskJournal(LOG_FILE_NAME) : null;
+        if (journal != null) {
+            journalCommit = new GroupCommit(GROUP_COMMIT_MILLIS, journal::sync);
+        }
         loadTasks();
+        // Whatever was just loaded is already on disk.
+        if (journal != null) {
+            journalCommit.markDurable(0);
+            startCompactor();
+        } else {
+            snapshotCommit.markDurable(0);
+        }
+        dateLegacyCompletedTasks();
+        checkDuplicates();
+        if (!ARCHIVE_AFTER_DAYS.equals("off")) {
+            try {
+                archiveCompletedTasks(Long.parseLong(ARCHIVE_AFTER_DAYS));
+            } catch (NumberFormatException e) {
+                System.err.println("Error reading todo.archiveDays: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -138,6 +5838,16 @@ public class ToDoListManager {
             System.out.println("4. Remove a task");
             System.out.println("5. Save tasks to file");
             System.out.println("6. Exit");
+            System.out.println("7. Count pending tasks by priority");
+            System.out.println("8. Show tasks due between two dates");
+            System.out.println("9. Show overdue tasks");
+            System.out.println("10. Remove all completed tasks");
+            System.out.println("11. Search tasks");
+            System.out.println("12. Show archived tasks");
+            System.out.println("13. Fuzzy search tasks");
+            System.out.println("14. Filter tasks by status, priority and due date");
+            System.out.println("15. Show the next most urgent pending tasks");
+            System.out.println("16. Archive old completed tasks");
             System.out.print("Enter your choice: ");
             String choice = scanner.nextLine();
             switch (choice) {
@@ -154,53 +5864,423 @@ public class ToDoListManager {
                     removeTask();
                     break;
                 case "5":
-                    saveTasks();
+                    compactTasks();
+                    saver.request();
+                    System.out.println("Saving tasks in the background.");
                     break;
                 case "6":
-                    // Save tasks automatically before exiting to avoid data loss
-                    saveTasks();
+                    // Save tasks automatically before exiting to avoid data loss.
+                    // Let any background save finish first so that the final
+                    // save has nothing left to race with.
+                    saver.flush();
+                    compactTasks();
+                    saveTasks(true);
+                    saver.close();
+                    stopCompactor();
+                    closeJournal();
+                    closeStore();
                     System.out.println("Goodbye!");
                     running = false;
                     break;
+                case "7":
+                    countPendingTasks();
+                    break;
+                case "8":
+                    showTasksDueBetween();
+                    break;
+                case "9":
+                    showOverdueTasks();
+                    break;
+                case "10":
+                    removeCompletedTasks();
+                    break;
+                case "11":
+                    searchTasks();
+                    break;
+                case "12":
+                    showArchivedTasks();
+                    break;
+                case "13":
+                    fuzzySearchTasks();
+                    break;
+                case "14":
+                    filterTasks();
+                    break;
+                case "15":
+                    showNextTasks();
+                    break;
+                case "16":
+                    archiveOldTasks();
+                    break;
                 default:
                     System.out.println("Invalid choice. Please select a valid option.");
             }
         }
     }
 
+    /**
+     * Prompts for the description of a new task.  Input starting with
+     * a question mark asks for the most used descriptions that start
+     * with the rest of it; the user then picks one by number or presses
+     * Enter to type a description after all.  A description that really
+     * starts with a question mark is entered with the mark doubled.
+     */
+    private String readDescription() {
+        while (true) {
+            System.out.print("Enter task description (?text for suggestions): ");
+            String description = scanner.nextLine().trim();
+            if (description.startsWith("??")) {
+                return description.substring(1);
+            }
+            if (!description.startsWith("?")) {
+                return description;
+            }
+            String prefix = description.substring(1);
+            List<String> suggestions = tasks.suggest(prefix, SUGGESTION_COUNT);
+            if (suggestions.isEmpty()) {
+                System.out.println("No existing descriptions start with \"" + prefix + "\".");
+                continue;
+            }
+            System.out.println("Suggestions:");
+            for (int i = 0; i < suggestions.size(); i++) {
+                System.out.println("  " + (i + 1) + ". " + suggestions.get(i));
+            }
+            while (true) {
+                System.out.print("Enter the number of a suggestion, or press Enter to type a description: ");
+                String input = scanner.nextLine().trim();
+                if (input.isEmpty()) {
+                    break;
+                }
+                try {
+                    int choice = Integer.parseInt(input);
+                    if (choice >= 1 && choice <= suggestions.size()) {
+                        return suggestions.get(choice - 1);
+                    }
+                } catch (NumberFormatException e) {
+                    // Reported below like a number out of range.
+                }
+                System.out.println("Invalid choice. Please enter a number from 1 to "
+                        + suggestions.size() + ".");
+            }
+        }
+    }
+
     /**
      * Prompts the user to enter details for a new task and adds it to
      * the in‑memory list.  The method asks for a description, a due
      * date in the format yyyy‑MM‑dd and a priority level.  Input
      * validation ensures that the user enters a valid date and
      * priority.  If invalid input is entered, the user is prompted
-     * again until a valid value is provided.
+     * again until a valid value is provided.  A description starting
+     * with a question mark lists the descriptions of existing tasks that
+     * start with the text after it, to pick from by number.
      */
     private void addTask() {
-        System.out.print("Enter task description: ");
-        String description = scanner.nextLine().trim();
-        // Validate date input.  Use a loop to keep asking until a valid
-        // date is entered.  If the date string cannot be parsed, an
-        // exception is caught and the user is notified.
-        LocalDate dueDate = null;
-        while (dueDate == null) {
-            System.out.print("Enter due date (YYYY‑MM‑DD): ");
+        String description = readDescription();
+        LocalDate dueDate = readDate("Enter due date (YYYY‑MM‑DD): ");
+        if (!DUPLICATE_MODE.equals("off") && tasks.containsTask(description, (int) dueDate.toEpochDay())) {
+            if (DUPLICATE_MODE.equals("reject")) {
+                System.out.println("A task with this description and due date already exists; it was not added.");
+                return;
+            }
+            System.out.println("Note: a task with this description and due date already exists.");
+        }
+        // Validate priority input.  Priority must be a positive integer.  A
+        // similar loop is used to ensure the user provides a valid
+        // number.
+        int priority = 0;
+        while (priority <= 0) {
+            System.out.print("Enter priority (1 = highest priority): ");
+            String priorityInput = scanner.nextLine().trim();
+            try {
+                priority = Integer.parseInt(priorityInput);
+                if (priority <= 0) {
+                    System.out.println("Priority must be a positive integer.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number. Please enter a valid integer for priority.");
+            }
+        }
+        synchronized (lock) {
+            final int addedIndex = tasks.add(description, (int) dueDate.toEpochDay(), priority, false);
+            changeCount++;
+            logChange(() -> journal.logAdded(tasks, addedIndex));
+            storeChange(() -> store.taskAdded(tasks, addedIndex));
+        }
+        System.out.println("Task added successfully!");
+    }
+
+    /**
+     * Prompts for a date until one in the format yyyy‑MM‑dd is entered.
+     * Use a loop to keep asking until a valid date is entered.  If the
+     * date string cannot be parsed, an exception is caught and the user
+     * is notified.
+     */
+    private LocalDate readDate(String prompt) {
+        while (true) {
+            System.out.print(prompt);
             String dateInput = scanner.nextLine().trim();
             try {
-                dueDate = LocalDate.parse(dateInput, DATE_FORMAT);
+                return LocalDate.parse(dateInput, DATE_FORMAT);
             } catch (DateTimeParseException e) {
                 System.out.println("Invalid date format. Please use YYYY‑MM‑DD.");
             }
         }
-        // Validate priority input.  Priority must be a positive integer.  A
-        // similar loop is used to ensure the user provides a valid
-        // number.
+    }
+
+    /**
+     * Displays the current list of tasks.  Each task is printed with
+     * its id so that the user can refer to it when marking it
+     * completed or removing it.  The list is sorted by
+     * priority (highest priority first) and then by due date so that
+     * urgent tasks appear at the top.  If no tasks exist, the user
+     * is informed accordingly.
+     */
+    private void viewTasks() {
+        if (tasks.isEmpty()) {
+            System.out.println("No tasks found.");
+            return;
+        }
+        // The table keeps its rows in view order: by priority
+        // (ascending priority number means higher priority) and then by
+        // due date.  Completed tasks remain in the list but are flagged
+        // as such.
+        System.out.println("Current tasks:");
+        tasks.forEachInViewOrder(this::printTask);
+    }
+
+    /**
+     * Prints one task under a heading showing its id.
+     */
+    private void printTask(int row) {
+        System.out.println("--- Task #" + tasks.id(row) + " ---");
+        System.out.println(tasks.get(row));
+    }
+
+    /**
+     * Prompts for two dates and lists the tasks due between them, both
+     * included, in order of due date.  The dates may be given in either
+     * order.  The tasks are found through the due date order of the
+     * table, so only the matching tasks are visited.
+     */
+    private void showTasksDueBetween() {
+        LocalDate from = readDate("Enter start date (YYYY‑MM‑DD): ");
+        LocalDate to = readDate("Enter end date (YYYY‑MM‑DD): ");
+        if (to.isBefore(from)) {
+            LocalDate swap = from;
+            from = to;
+            to = swap;
+        }
+        int[] rows = tasks.rowsDueBetween((int) from.toEpochDay(), (int) to.toEpochDay());
+        String range = from.format(DATE_FORMAT) + " and " + to.format(DATE_FORMAT);
+        if (rows.length == 0) {
+            System.out.println("No tasks due between " + range + ".");
+            return;
+        }
+        System.out.println("Tasks due between " + range + ":");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Searches the task descriptions for words, ignoring case.  A task
+     * matches when its description contains every word entered; OR
+     * separates alternatives, so "milk bread OR eggs" finds the tasks
+     * mentioning both milk and bread as well as those mentioning eggs.
+     * AND may be written between words but is implied.  Matches are
+     * listed in the order of the task view.
+     */
+    private void searchTasks() {
+        System.out.print("Enter words to search for (use OR between alternatives): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) {
+            System.out.println("No search words entered.");
+            return;
+        }
+        List<String> clauses = new ArrayList<>();
+        StringBuilder clause = new StringBuilder();
+        for (String term : query.split("\\s+")) {
+            if (term.equals("OR")) {
+                clauses.add(clause.toString());
+                clause.setLength(0);
+            } else if (!term.equals("AND")) {
+                clause.append(term).append(' ');
+            }
+        }
+        clauses.add(clause.toString());
+        int[] rows = tasks.search(clauses);
+        if (rows.length == 0) {
+            System.out.println("No tasks match \"" + query + "\".");
+            return;
+        }
+        System.out.println("Tasks matching \"" + query + "\":");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Searches for tasks whose descriptions resemble the text entered,
+     * so that a misspelt or half remembered description still finds
+     * them.  The closest matches are listed first.
+     */
+    private void fuzzySearchTasks() {
+        System.out.print("Enter text to search for (typos allowed): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) {
+            System.out.println("No search text entered.");
+            return;
+        }
+        int[] rows = tasks.fuzzySearch(query, FUZZY_RESULT_COUNT);
+        if (rows.length == 0) {
+            System.out.println("No tasks resemble \"" + query + "\".");
+            return;
+        }
+        System.out.println("Tasks resembling \"" + query + "\", closest first:");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Lists the most urgent pending tasks, as many as the user asks
+     * for, in the order of the task view.  Unlike viewing all tasks,
+     * this only looks at the tasks it lists and skips completed ones.
+     */
+    private void showNextTasks() {
+        int count = 0;
+        while (count <= 0) {
+            System.out.print("How many tasks? [" + NEXT_TASK_COUNT + "]: ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                count = NEXT_TASK_COUNT;
+                break;
+            }
+            try {
+                count = Integer.parseInt(input);
+                if (count <= 0) {
+                    System.out.println("Number must be a positive integer.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number. Please enter a valid integer.");
+            }
+        }
+        int[] rows = tasks.nextPending(count);
+        if (rows.length == 0) {
+            System.out.println("No pending tasks.");
+            return;
+        }
+        System.out.println("Next " + rows.length + " pending tasks:");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Lists the tasks that pass a filter on their status, their
+     * priority and whether they are overdue, such as the pending tasks
+     * of priority 2 or higher that are past their due date.  Every
+     * question may be left blank to not filter on it.  The matching
+     * tasks are listed in the order of the task view.
+     */
+    private void filterTasks() {
+        Boolean done = null;
+        while (true) {
+            System.out.print("Show all, pending or completed tasks? [all]: ");
+            String status = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+            if (status.isEmpty() || status.equals("all")) {
+                break;
+            } else if (status.equals("pending") || status.equals("completed")) {
+                done = status.equals("completed");
+                break;
+            }
+            System.out.println("Please enter all, pending or completed.");
+        }
+        int maxPriority = 0;
+        while (maxPriority <= 0) {
+            System.out.print("Highest priority number to show (blank for any): ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                maxPriority = Integer.MAX_VALUE;
+                break;
+            }
+            try {
+                maxPriority = Integer.parseInt(input);
+                if (maxPriority <= 0) {
+                    System.out.println("Priority must be a positive integer.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number. Please enter a valid integer for priority.");
+            }
+        }
+        System.out.print("Only overdue tasks? (y/n) [n]: ");
+        boolean overdue = scanner.nextLine().trim().toLowerCase(Locale.ROOT).startsWith("y");
+        int[] rows = tasks.filter(done, maxPriority,
+                overdue ? (int) LocalDate.now().toEpochDay() : Integer.MAX_VALUE);
+        if (rows.length == 0) {
+            System.out.println("No tasks match the filter.");
+            return;
+        }
+        System.out.println("Tasks matching the filter:");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Lists the archived tasks whose descriptions contain every word
+     * entered, ignoring case, or all of them when no words are entered.
+     * This is the only time the archive file is read.
+     */
+    private void showArchivedTasks() {
+        System.out.print("Enter words to look for in archived tasks (blank for all): ");
+        String query = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+        final TaskArchive.FoundTasks history;
+        try {
+            history = archive.find(query.isEmpty() ? new String[0] : query.split("\\s+"));
+        } catch (IOException e) {
+            System.err.println("Error reading " + archive.location() + ": " + e.getMessage());
+            return;
+        }
+        if (history.table.isEmpty()) {
+            System.out.println("No archived tasks found.");
+            return;
+        }
+        System.out.println("Archived tasks:");
+        history.table.forEachInViewOrder(row -> {
+            System.out.println("--- Task #" + history.ids[row] + " ---");
+            System.out.println(history.table.get(row));
+        });
+    }
+
+    /**
+     * Lists the pending tasks whose due date has passed, oldest first.
+     */
+    private void showOverdueTasks() {
+        int[] rows = tasks.overdueRows((int) LocalDate.now().toEpochDay());
+        if (rows.length == 0) {
+            System.out.println("No overdue tasks.");
+            return;
+        }
+        System.out.println("Overdue tasks:");
+        for (int row : rows) {
+            printTask(row);
+        }
+    }
+
+    /**
+     * Prompts for a priority level and reports how many pending tasks
+     * have that priority.  The count is kept by the priority index of
+     * the task table, so no task is looked at.
+     */
+    private void countPendingTasks() {
         int priority = 0;
         while (priority <= 0) {
-            System.out.print("Enter priority (1 = highest priority): ");
-            String priorityInput = scanner.nextLine().trim();
+            System.out.print("Enter priority to count: ");
+            String input = scanner.nextLine().trim();
             try {
-                priority = Integer.parseInt(priorityInput);
+                priority = Integer.parseInt(input);
                 if (priority <= 0) {
                     System.out.println("Priority must be a positive integer.");
                 }
@@ -208,49 +6288,14 @@ public class ToDoListManager {
                 System.out.println("Invalid number. Please enter a valid integer for priority.");
             }
         }
-        Task newTask = new Task(description, dueDate, priority);
-        tasks.add(newTask);
-        System.out.println("Task added successfully!");
-    }
-
-    /**
-     * Displays the current list of tasks.  Each task is printed with
-     * its index in the list so that the user can refer to it when
-     * marking it completed or removing it.  The list is sorted by
-     * priority (highest priority first) and then by due date so that
-     * urgent tasks appear at the top.  If no tasks exist, the user
-     * is informed accordingly.
-     */
-    private void viewTasks() {
-        if (tasks.isEmpty()) {
-            System.out.println("No tasks found.");
-            return;
-        }
-        // Create a copy of the task list so that sorting does not
-        // modify the order in the original list.  The copy is sorted
-        // by priority (ascending priority number means higher priority)
-        // and then by due date.  Completed tasks remain in the list
-        // but are flagged as such.
-        List<Task> sortedTasks = new ArrayList<>(tasks);
-        sortedTasks.sort((a, b) -> {
-            if (a.getPriority() != b.getPriority()) {
-                return Integer.compare(a.getPriority(), b.getPriority());
-            }
-            return a.getDueDate().compareTo(b.getDueDate());
-        });
-        System.out.println("Current tasks:");
-        int index = 1;
-        for (Task task : sortedTasks) {
-            System.out.println("--- Task #" + index + " ---");
-            System.out.println(task);
-            index++;
-        }
+        int count = tasks.countPending(priority);
+        System.out.println("Pending tasks with priority " + priority + ": " + count);
     }
 
     /**
      * Allows the user to mark a task as completed.  The user is
-     * prompted for the index of the task.  Input is validated to
-     * ensure that a valid index is provided.  Completed tasks remain
+     * prompted for the id of the task.  Input is validated to
+     * ensure that the id belongs to a task.  Completed tasks remain
      * in the list but are flagged as completed so they can be
      * differentiated from pending tasks when viewing the list.
      */
@@ -259,35 +6304,30 @@ public class ToDoListManager {
             System.out.println("No tasks to mark as completed.");
             return;
         }
-        // Display tasks so that the user knows the indices
+        // Display tasks so that the user knows the ids
         viewTasks();
-        int index = -1;
-        while (index < 1 || index > tasks.size()) {
-            System.out.print("Enter the task number to mark as completed: ");
-            String input = scanner.nextLine().trim();
-            try {
-                index = Integer.parseInt(input);
-                if (index < 1 || index > tasks.size()) {
-                    System.out.println("Invalid task number. Please try again.");
-                }
-            } catch (NumberFormatException e) {
-                System.out.println("Please enter a valid task number.");
-            }
-        }
-        Task task = tasks.get(index - 1);
-        if (task.isCompleted()) {
+        final long id = readTaskId("Enter the task number to mark as completed: ");
+        int row = tasks.rowOf(id);
+        if (tasks.isCompleted(row)) {
             System.out.println("Task is already marked as completed.");
         } else {
-            task.setCompleted(true);
+            final int today = (int) LocalDate.now().toEpochDay();
+            synchronized (lock) {
+                tasks.setCompleted(row, true);
+                tasks.setCompletedDay(row, today);
+                changeCount++;
+                logChange(() -> journal.logCompleted(id, today));
+                storeChange(() -> store.taskCompleted(tasks, row));
+            }
             System.out.println("Task marked as completed!");
         }
     }
 
     /**
      * Removes a task from the list.  The user is prompted for the
-     * index of the task to remove.  Input is validated to ensure that
-     * a valid index is provided and the removal is carried out
-     * accordingly.  If the user enters an invalid index, they are
+     * id of the task to remove.  Input is validated to ensure that
+     * the id belongs to a task and the removal is carried out
+     * accordingly.  If the user enters an unknown id, they are
      * prompted again until a valid one is provided.
      */
     private void removeTask() {
@@ -296,66 +6336,340 @@ public class ToDoListManager {
             return;
         }
         viewTasks();
-        int index = -1;
-        while (index < 1 || index > tasks.size()) {
-            System.out.print("Enter the task number to remove: ");
+        final long id = readTaskId("Enter the task number to remove: ");
+        String removed;
+        synchronized (lock) {
+            final int row = tasks.rowOf(id);
+            removed = tasks.description(row);
+            tasks.remove(row);
+            changeCount++;
+            logChange(() -> journal.logRemoved(id));
+            storeChange(() -> store.taskRemoved(row));
+            if (tasks.needsCompaction()) {
+                compactTasks();
+            }
+        }
+        System.out.println("Removed task: " + removed);
+    }
+
+    /**
+     * Removes every completed task in one go.  Each task is only turned
+     * into a tombstone and the table is compacted once at the end, so
+     * the whole clean‑up takes time linear in the length of the list
+     * however many tasks are removed.
+     */
+    private void removeCompletedTasks() {
+        int count;
+        synchronized (lock) {
+            BitSet done = tasks.completedRows();
+            int[] rows = new int[done.cardinality()];
+            count = 0;
+            for (int row = done.nextSetBit(0); row >= 0 && row < tasks.size(); row = done.nextSetBit(row + 1)) {
+                if (!tasks.isRemoved(row)) {
+                    rows[count++] = row;
+                }
+            }
+            if (count == 0) {
+                System.out.println("No completed tasks to remove.");
+                return;
+            }
+            removeRows(Arrays.copyOf(rows, count));
+        }
+        System.out.println("Removed " + count + " completed task(s).");
+    }
+
+    /**
+     * Looks for loaded tasks that repeat the description and due date
+     * of an earlier task.  In reject mode they are removed, keeping the
+     * first of each; in warn mode they are only counted.
+     */
+    private void checkDuplicates() {
+        switch (DUPLICATE_MODE) {
+            case "off":
+                return;
+            case "warn":
+            case "reject":
+                break;
+            default:
+                System.err.println("Unknown duplicate mode '" + DUPLICATE_MODE + "', allowing duplicates.");
+                return;
+        }
+        boolean reject = DUPLICATE_MODE.equals("reject");
+        int count;
+        synchronized (lock) {
+            int[] rows = tasks.duplicateRows();
+            count = rows.length;
+            if (reject && count > 0) {
+                removeRows(rows);
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        if (reject) {
+            System.out.println("Removed " + count + " duplicate task(s).");
+        } else {
+            System.out.println("Note: " + count + " task(s) repeat the description and due date of another task.");
+        }
+    }
+
+    /**
+     * Records today as the completion day of the completed tasks that
+     * were loaded without one, from a file written before completion
+     * days were recorded.  When they were really completed is not
+     * known, but it was no later than today, so they are archived once
+     * they have been kept for the archiving age from now on rather than
+     * never.  The day is passed on to the change log or the storage
+     * engine like any other completion.
+     */
+    private void dateLegacyCompletedTasks() {
+        final int today = (int) LocalDate.now().toEpochDay();
+        synchronized (lock) {
+            int[] rows = tasks.assignMissingCompletedDays(today);
+            if (rows.length == 0) {
+                return;
+            }
+            changeCount++;
+            for (int row : rows) {
+                final long id = tasks.id(row);
+                logChange(() -> journal.logCompleted(id, today));
+                storeChange(() -> store.taskCompleted(tasks, row));
+            }
+        }
+    }
+
+    /**
+     * Asks for an age in days and archives the completed tasks that were
+     * completed at least that many days ago.  A blank answer archives
+     * nothing.
+     */
+    private void archiveOldTasks() {
+        while (true) {
+            System.out.print("Archive tasks completed at least how many days ago (blank to skip): ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return;
+            }
+            try {
+                long days = Long.parseLong(input);
+                if (days >= 0) {
+                    archiveCompletedTasks(days);
+                    return;
+                }
+                System.out.println("Number must not be negative.");
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number. Please enter a valid integer.");
+            }
+        }
+    }
+
+    /**
+     * Moves the tasks that were completed at least the given number of
+     * days ago to the archive.  Tasks completed before completion days
+     * were recorded count as completed on the day they were first
+     * loaded.  The tasks are only removed from the list once the
+     * archive has them on disk.
+     */
+    private void archiveCompletedTasks(long days) {
+        if (days < 0) {
+            return;
+        }
+        long cutoff = LocalDate.now().toEpochDay() - days;
+        int count;
+        synchronized (lock) {
+            BitSet done = tasks.completedRows();
+            int[] rows = new int[done.cardinality()];
+            count = 0;
+            for (int row = done.nextSetBit(0); row >= 0 && row < tasks.size(); row = done.nextSetBit(row + 1)) {
+                int completedDay = tasks.completedDay(row);
+                if (!tasks.isRemoved(row) && completedDay != TaskTable.NO_DAY && completedDay <= cutoff) {
+                    rows[count++] = row;
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            rows = Arrays.copyOf(rows, count);
+            try {
+                archive.append(tasks, rows);
+            } catch (IOException e) {
+                System.err.println("Error writing to " + archive.location() + ": " + e.getMessage());
+                return;
+            }
+            removeRows(rows);
+        }
+        System.out.println("Archived " + count + " completed task(s) to " + archive.location() + ".");
+    }
+
+    /**
+     * Removes the tasks in the given rows, passes the removal on to the
+     * change log or storage engine and compacts the table.  Must be
+     * called with the lock held.
+     */
+    private void removeRows(final int[] rows) {
+        final long[] ids = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            ids[i] = tasks.id(rows[i]);
+        }
+        for (int row : rows) {
+            tasks.remove(row);
+        }
+        changeCount++;
+        logChange(() -> journal.logRemoved(ids));
+        storeChange(() -> {
+            for (int row : rows) {
+                store.taskRemoved(row);
+            }
+        });
+        compactTasks();
+    }
+
+    /**
+     * Drops the tombstones of removed tasks from the table, letting the
+     * storage engine follow along.  Only called from the menu thread, so
+     * that row numbers never change under a menu handler; background
+     * saves either copy the table or skip its tombstones.
+     */
+    private void compactTasks() {
+        synchronized (lock) {
+            if (!tasks.hasRemovedRows()) {
+                return;
+            }
+            storeChange(() -> store.compacting(tasks));
+            tasks.compact();
+        }
+    }
+
+    /**
+     * Prompts until the user enters the id of an existing task, as
+     * shown by the task view, and returns it.
+     */
+    private long readTaskId(String prompt) {
+        while (true) {
+            System.out.print(prompt);
             String input = scanner.nextLine().trim();
             try {
-                index = Integer.parseInt(input);
-                if (index < 1 || index > tasks.size()) {
-                    System.out.println("Invalid task number. Please try again.");
+                long id = Long.parseLong(input);
+                if (tasks.rowOf(id) >= 0) {
+                    return id;
                 }
+                System.out.println("Invalid task number. Please try again.");
             } catch (NumberFormatException e) {
                 System.out.println("Please enter a valid task number.");
             }
         }
-        Task removed = tasks.remove(index - 1);
-        System.out.println("Removed task: " + removed.getDescription());
     }
 
     /**
      * Loads tasks from the persistent storage file.  Each line in the
      * file represents one task and uses the format
-     * description|dueDate|priority|completed.  If the file is not
+     * description|dueDate|priority|completed|id, followed by the
+     * completion date of a completed task when it is known.  If the file is not
      * found or cannot be read, this method quietly returns without
      * affecting the current list of tasks.  If the file is present,
      * tasks are cleared before loading to avoid duplicating tasks.
+     * In journal mode the change log is replayed on top of the
+     * loaded snapshot afterwards.  When an alternative storage engine
+     * is selected it loads the tasks instead; on the first start with
+     * that engine the tasks file and log are imported into it, so that
+     * switching engines keeps the list.  Tasks loaded from a
+     * file written before tasks had ids are given ids here; they count
+     * as a change so that the ids are written out on the next save.
      */
     private void loadTasks() {
-        File file = new File(FILE_NAME);
-        if (!file.exists()) {
-            return;
-        }
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            tasks.clear();
-            while ((line = reader.readLine()) != null) {
-                // Skip empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                String[] parts = line.split("\\|");
-                if (parts.length != 4) {
-                    continue; // Malformed line; skip it
+        if (store != null) {
+            try {
+                boolean newStore = !Files.exists(Paths.get(store.location()));
+                store.load(tasks);
+                if (newStore && tasks.size() == 0 && (Files.exists(Paths.get(FILE_NAME))
+                        || Files.exists(Paths.get(LOG_FILE_NAME)))) {
+                    importTextTasks();
                 }
-                String description = parts[0];
-                LocalDate date;
-                try {
-                    date = LocalDate.parse(parts[1], DATE_FORMAT);
-                } catch (DateTimeParseException e) {
-                    continue; // Skip invalid date entries
+                if (tasks.assignMissingIds() > 0) {
+                    changeCount++;
                 }
-                int pr;
-                try {
-                    pr = Integer.parseInt(parts[2]);
-                } catch (NumberFormatException e) {
-                    pr = 1; // Default priority
+                compactTasks();
+            } catch (IOException e) {
+                System.err.println("Error reading tasks from " + store.location() + ": "
+                        + e.getMessage());
+                // Leave the store closed so that a broken file is not
+                // overwritten; changes will only be kept in memory.
+                closeStore();
+                store = null;
+            }
+            return;
+        }
+        loadSnapshot();
+        // Ids are assigned before the log is replayed, the same way on
+        // every start, so that log records written in this session
+        // refer to the same tasks next time.
+        if (tasks.assignMissingIds() > 0) {
+            changeCount++;
+        }
+        if (journal != null) {
+            try {
+                long start = System.nanoTime();
+                journal.replay(tasks, snapshotGeneration);
+                // Every row must have an id to be completed or removed.
+                if (tasks.assignMissingIds() > 0) {
+                    changeCount++;
                 }
-                boolean comp = Boolean.parseBoolean(parts[3]);
-                Task task = new Task(description, date, pr);
-                task.setCompleted(comp);
-                tasks.add(task);
+                compactTasks();
+                lastReplayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (IOException e) {
+                System.err.println("Error replaying task log: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copies the tasks from the tasks file and its change log into the
+     * storage engine, which has just been created and is still empty,
+     * and saves them there.  The text files are left untouched but are
+     * not read again once the engine holds the tasks.
+     */
+    private void importTextTasks() throws IOException {
+        TaskStore target = store;
+        // The engine is told about the loaded rows all at once below,
+        // so it must not hear about the compaction of the log's
+        // removals.
+        store = null;
+        try {
+            loadSnapshot();
+            TaskJournal log = new TaskJournal(LOG_FILE_NAME);
+            log.replay(tasks, snapshotGeneration);
+            log.close();
+            tasks.assignMissingIds();
+            compactTasks();
+        } finally {
+            store = target;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            store.taskAdded(tasks, i);
+        }
+        changeCount++;
+        saveTasks(false);
+        System.out.println("Imported " + tasks.size() + " tasks from " + FILE_NAME + " and "
+                + LOG_FILE_NAME + " into " + store.location() + ".");
+    }
+
+    /**
+     * Reads the snapshot file into the task list, replacing its
+     * current contents.  Does nothing when the file does not exist.
+     */
+    private void loadSnapshot() {
+        Path path = Paths.get(FILE_NAME);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            tasks.clear();
+            TaskParser.ParsedTasks parsed = new TaskParser.ParsedTasks(tasks);
+            TaskParser.parse(channel, parsed);
+            if (parsed.hasGeneration) {
+                snapshotGeneration = parsed.generation;
             }
+            tasks.reserveIds(parsed.nextId);
         } catch (IOException e) {
             System.err.println("Error reading tasks from file: " + e.getMessage());
         }
@@ -364,27 +6678,401 @@ public class ToDoListManager {
     /**
      * Saves the current list of tasks to a file.  Each task is
      * written on its own line in the format
-     * description|dueDate|priority|completed.  If an error occurs
+     * description|dueDate|priority|completed|id, followed by the
+     * completion date of a completed task when it is known.  If an error occurs
      * during writing (for example, if the file cannot be created), an
      * error message is printed to the console.  This method is
-     * called when the user chooses to save or when exiting the
-     * program.
-     */
-    private void saveTasks() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-            for (Task task : tasks) {
-                String line = String.join("|", new String[] {
-                        task.getDescription(),
-                        task.getDueDate().format(DATE_FORMAT),
-                        Integer.toString(task.getPriority()),
-                        Boolean.toString(task.isCompleted())
-                });
-                writer.write(line);
-                writer.newLine();
+     * run by the background saver when the user chooses to save and
+     * directly when exiting the program.  In journal mode every change has already been
+     * appended to the log, so saving only needs to sync it.  Both
+     * kinds of save go through a group commit, so a save that finds
+     * everything already on disk (for example saving and then exiting
+     * without further changes) costs no extra fsync.  When nothing has
+     * changed since the last save, no file is touched at all.  A
+     * storage engine only collects what to write under the lock and
+     * writes it once the lock is released, like a full snapshot.
+     *
+     * @param report whether to tell the user about the outcome; errors
+     *               are always reported
+     */
+    private void saveTasks(boolean report) {
+        try {
+            if (store != null) {
+                boolean clean;
+                synchronized (storeSaveLock) {
+                    PersistAction write = null;
+                    long version;
+                    synchronized (lock) {
+                        version = changeCount;
+                        clean = version == savedChangeCount;
+                        if (!clean) {
+                            write = store.save(tasks);
+                        }
+                    }
+                    if (write != null) {
+                        write.run();
+                        synchronized (lock) {
+                            savedChangeCount = version;
+                        }
+                    }
+                }
+                reportSaved(report, clean, store.location());
+                return;
             }
-            System.out.println("Tasks saved successfully to " + FILE_NAME);
+            if (journal != null) {
+                long appended = journal.appended();
+                boolean clean = journalCommit.isDurable(appended);
+                journalCommit.commit(appended);
+                reportSaved(report, clean, LOG_FILE_NAME);
+                return;
+            }
+            long version;
+            synchronized (lock) {
+                version = changeCount;
+            }
+            boolean clean = snapshotCommit.isDurable(version);
+            snapshotCommit.commit(version);
+            reportSaved(report, clean, FILE_NAME);
         } catch (IOException e) {
             System.err.println("Error saving tasks: " + e.getMessage());
         }
     }
+
+    private static void reportSaved(boolean report, boolean alreadySaved, String location) {
+        if (!report) {
+            return;
+        }
+        if (alreadySaved) {
+            System.out.println("No unsaved changes; tasks are up to date in " + location);
+        } else {
+            System.out.println("Tasks saved successfully to " + location);
+        }
+    }
+
+    /**
+     * Writes a full snapshot for a group commit and returns the change
+     * count it reflects.  A full save supersedes any change log left on
+     * disk, so it always starts a new generation.  Only copying the list
+     * happens under the lock; the menu can keep changing tasks while the
+     * copy is written out.
+     */
+    private long flushSnapshot() throws IOException {
+        TaskTable copy;
+        long version;
+        long generation;
+        synchronized (lock) {
+            copy = tasks.copy();
+            version = changeCount;
+            generation = ++snapshotGeneration;
+        }
+        try {
+            writeSnapshot(copy, generation);
+        } finally {
+            copy.discard();
+        }
+        return version;
+    }
+
+    /**
+     * Writes the task list to a temporary file next to the tasks file,
+     * forces it to disk once and then atomically moves it over the
+     * tasks file.  The live file is never truncated, so a crash at any
+     * point leaves either the old or the new list on disk.
+     */
+    private static void writeSnapshot(TaskTable tasks, long generation) throws IOException {
+        Path target = Paths.get(FILE_NAME);
+        Path temp = Paths.get(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeTasks(channel, tasks, generation);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the generation and next id headers followed by one line
+     * per task in the format description|dueDate|priority|completed|id,
+     * with the completion date as a sixth field when it is known, in
+     * the platform charset the parser reads it with.  The lines are put
+     * together as bytes: the due date comes pre‑rendered from
+     * {@link DateText}, and where the platform charset is UTF‑8 the
+     * description is copied as stored in the table, so no strings or
+     * date objects are created per task.
+     */
+    private static void writeTasks(FileChannel channel, TaskTable tasks, long generation)
+            throws IOException {
+        boolean utf8 = TaskParser.CHARSET.equals(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        buffer.put((GENERATION_PREFIX + generation + "\n" + NEXT_ID_PREFIX + tasks.nextId() + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        for (int row = 0; row < tasks.size(); row++) {
+            if (tasks.isRemoved(row)) {
+                continue;
+            }
+            ByteBuffer description = utf8
+                    ? tasks.descriptionBytes(row)
+                    : ByteBuffer.wrap(tasks.description(row).getBytes(TaskParser.CHARSET));
+            if (buffer.remaining() < description.remaining() + MAX_FIELDS_LENGTH) {
+                drain(channel, buffer);
+                if (buffer.remaining() < description.remaining() + MAX_FIELDS_LENGTH) {
+                    // Too long to buffer; write it out on its own.
+                    while (description.hasRemaining()) {
+                        channel.write(description);
+                    }
+                }
+            }
+            buffer.put(description).put((byte) '|')
+                    .put(DateText.ascii(tasks.epochDay(row))).put((byte) '|');
+            putDecimal(buffer, tasks.priority(row));
+            buffer.put((byte) '|').put(tasks.isCompleted(row) ? TRUE_BYTES : FALSE_BYTES)
+                    .put((byte) '|');
+            putDecimal(buffer, tasks.id(row));
+            if (tasks.completedDay(row) != TaskTable.NO_DAY) {
+                buffer.put((byte) '|').put(DateText.ascii(tasks.completedDay(row)));
+            }
+            buffer.put((byte) '\n');
+        }
+        drain(channel, buffer);
+    }
+
+    /**
+     * Appends the decimal digits of the number to the buffer.
+     */
+    private static void putDecimal(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        // The digits came out last first.
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte swap = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, swap);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Formats a task as one line of the tasks file.
+     */
+    private static String formatTask(TaskTable tasks, int row) {
+        String line = String.join("|", new String[] {
+                tasks.description(row),
+                DateText.format(tasks.epochDay(row)),
+                Integer.toString(tasks.priority(row)),
+                Boolean.toString(tasks.isCompleted(row)),
+                Long.toString(tasks.id(row))
+        });
+        int completedDay = tasks.completedDay(row);
+        return completedDay == TaskTable.NO_DAY ? line : line + "|" + DateText.format(completedDay);
+    }
+
+    /**
+     * Parses a #gen=N header line.  Returns 0 for a missing or
+     * malformed header, which is what files written before
+     * generations were introduced are treated as.
+     */
+    private static long parseGeneration(String line) {
+        return parseHeader(line, GENERATION_PREFIX);
+    }
+
+    /**
+     * Parses the number in a header line starting with the given
+     * prefix.  Returns 0 for a missing or malformed header.
+     */
+    private static long parseHeader(String line, String prefix) {
+        if (line == null || !line.startsWith(prefix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(line.substring(prefix.length()).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Starts the background thread that syncs the change log and
+     * periodically checks whether it should be compacted.  The thread is a daemon so
+     * that it never keeps the program alive on its own.
+     */
+    private void startCompactor() {
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "task-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                0, COMPACT_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void stopCompactor() {
+        if (compactor == null) {
+            return;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compacts the change log when it has grown past the configured
+     * size or when replaying it at startup was slower than allowed.
+     */
+    private void compactIfNeeded() {
+        if (journal.size() >= COMPACT_LOG_BYTES
+                || lastReplayMillis >= COMPACT_REPLAY_MILLIS) {
+            compact();
+        }
+    }
+
+    /**
+     * Folds the change log into a fresh snapshot.  Only copying the list
+     * and marking the log happen under the lock; the copy is written out
+     * while the menu keeps changing tasks, and once it is in place the
+     * log is replaced by one holding just the records logged since.  If
+     * the program dies in between, the next startup replays the old log
+     * from the mark on.
+     */
+    private void compact() {
+        TaskTable copy;
+        long next;
+        synchronized (lock) {
+            try {
+                next = journal.mark(snapshotGeneration);
+            } catch (IOException e) {
+                System.err.println("Error compacting task log: " + e.getMessage());
+                return;
+            }
+            copy = tasks.copy();
+        }
+        try {
+            writeSnapshot(copy, next);
+            synchronized (lock) {
+                snapshotGeneration = next;
+                journal.rotate(next, tasks.nextId());
+                lastReplayMillis = 0;
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting task log: " + e.getMessage());
+        } finally {
+            copy.discard();
+        }
+    }
+
+    /**
+     * A single write to the change log or the task store.  Used so that
+     * the menu handlers can hand a persistence action to
+     * {@link #logChange} or {@link #storeChange} without repeating the
+     * error handling, and by task stores for the part of a save that
+     * runs without the lock.
+     */
+    private interface PersistAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Appends a change to the journal when journal mode is enabled.
+     * A failed append is reported but does not undo the in‑memory
+     * change; the user can still save the list explicitly.
+     */
+    private void logChange(PersistAction action) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            action.run();
+        } catch (IOException e) {
+            System.err.println("Error writing to task log: " + e.getMessage());
+            return;
+        }
+        // Make the record durable in the background.  Records appended
+        // within one commit window are synced together.
+        final long version = journal.appended();
+        compactor.execute(() -> {
+            try {
+                journalCommit.commit(version);
+            } catch (IOException e) {
+                System.err.println("Error syncing task log: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Passes a change on to the alternative storage engine, if one is in
+     * use.  Errors are reported the same way as journal errors.
+     */
+    private void storeChange(PersistAction action) {
+        if (store == null) {
+            return;
+        }
+        try {
+            action.run();
+        } catch (IOException e) {
+            System.err.println("Error writing to " + store.location() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the storage engine selected by the todo.store property,
+     * or returns null for the built‑in text file.
+     */
+    private static TaskStore createStore() {
+        switch (STORE_TYPE) {
+            case "text":
+                return null;
+            case "mapped":
+                return new MappedTaskStore("tasks.bin", "tasks.heap");
+            case "columnar":
+                return new ColumnarTaskStore("tasks.col");
+            case "segmented":
+                return new SegmentedTaskStore("tasks.seg");
+            default:
+                System.err.println("Unknown task store '" + STORE_TYPE + "', using text file.");
+                return null;
+        }
+    }
+
+    private void closeStore() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            System.err.println("Error closing " + store.location() + ": " + e.getMessage());
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing task log: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file